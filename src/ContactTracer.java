@@ -1,13 +1,197 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ContactTracer {
-    private Graph graph;
+    /**
+     * Number of buffered traces in a stripe before a writer tries to publish
+     */
+    private static final int PUBLISH_THRESHOLD = 4096;
+
+    /**
+     * Longest time in milliseconds a buffered trace waits before the
+     * background publisher moves it into the graph
+     */
+    private static final long PUBLISH_INTERVAL = 10;
+
+    /**
+     * Daemon thread shared by every concurrent tracer to publish buffered
+     * traces that no writer has published
+     */
+    private static final ScheduledExecutorService PUBLISHER =
+            Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "ContactTracer publisher");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Initial size of the chunks read by the streaming loaders
+     */
+    private static final int LOAD_CHUNK = 1 << 20;
+
+    /**
+     * Longest name in bytes accepted from a binary trace log
+     */
+    private static final int MAX_NAME_LENGTH = 1 << 16;
+
+    /**
+     * Retention horizon meaning contact traces are never evicted
+     */
+    public static final int RETAIN_ALL = Integer.MAX_VALUE;
+
+    private ContactGraph graph;
+    // The same graph when traces can be added, or null if opened from a file
+    private Graph mutableGraph;
+    private ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+
+    // Only used in concurrent mode, otherwise null
+    private ReentrantReadWriteLock lock;
+    private IngestBuffer[] stripes;
+    private AtomicInteger pending;
+
+    private List<Subscription> subscriptions = new ArrayList<>();
 
     /**
      * Initialises an empty ContactTracer with no populated contact traces.
      */
     public ContactTracer() {
-        graph = new Graph();
+        mutableGraph = new Graph();
+        graph = mutableGraph;
+    }
+
+    /**
+     * Initialises an empty ContactTracer, optionally safe for concurrent use.
+     *
+     * In concurrent mode any number of threads may add traces while others
+     * query. Writers append to striped buffers without blocking readers, and
+     * buffered traces are published into the graph in batches, either by the
+     * writer whose stripe fills up or by a background thread at most
+     * PUBLISH_INTERVAL milliseconds after they were added. Queries only take
+     * the read lock and never publish, so every query runs against a
+     * consistent snapshot of the published traces but may miss the ones
+     * still buffered. Call flush to make every trace added so far visible to
+     * later queries.
+     *
+     * @param concurrent whether the tracer will be shared between threads
+     */
+    public ContactTracer(boolean concurrent) {
+        this();
+        if (concurrent) {
+            int count = Integer.highestOneBit(
+                    Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+            lock = new ReentrantReadWriteLock();
+            stripes = new IngestBuffer[count];
+            for (int i = 0; i < count; i++) {
+                stripes[i] = new IngestBuffer();
+            }
+            pending = new AtomicInteger();
+            Publisher publisher = new Publisher(this);
+            publisher.future = PUBLISHER.scheduleWithFixedDelay(publisher,
+                    PUBLISH_INTERVAL, PUBLISH_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private ContactTracer(ContactGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Opens a contact graph file previously written by writeTo, without
+     * loading it onto the heap.
+     *
+     * The file is memory mapped read-only and every query runs directly
+     * against the mapped data, so opening is near instant regardless of the
+     * file size. The returned tracer cannot have traces added to it.
+     *
+     * @param path of the contact graph file
+     * @return a read-only ContactTracer backed by the file
+     * @throws IOException if the file cannot be read or is not a contact graph
+     * @require path != null
+     */
+    public static ContactTracer open(Path path) throws IOException {
+        return new ContactTracer(MappedGraph.open(path));
+    }
+
+    /**
+     * Writes every stored contact trace to a compact binary file that can
+     * later be opened with open.
+     *
+     * The file holds a person dictionary with a hash index, the contacts of
+     * every person in compressed sparse row form (offsets, then neighbour ids
+     * and times in time order), and the sorted contact times of every pair.
+     *
+     * @param path of the file to write, replacing any existing file
+     * @throws IOException if the file cannot be written
+     * @require path != null
+     */
+    public void writeTo(Path path) throws IOException {
+        beginWrite();
+        try {
+            if (mutableGraph != null) {
+                // Evicted contacts must not be written out
+                mutableGraph.compact(Integer.MAX_VALUE);
+            }
+            MappedGraph.write(graph, path);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Limits the contact traces kept to those within horizon minutes of the
+     * latest trace added so far.
+     *
+     * Older traces are immediately ignored by every query and are physically
+     * removed a few people at a time as further traces are added, so the
+     * memory they used is reclaimed without a full pause. Traces older than
+     * the horizon that are added later are dropped, so a trace that has been
+     * evicted can never be stored twice.
+     *
+     * @param horizon minutes of contact history to keep, or RETAIN_ALL
+     * @throws UnsupportedOperationException if the tracer was opened from a file
+     * @require horizon >= 0
+     */
+    public void setRetention(int horizon) {
+        beginWrite();
+        try {
+            writableGraph().setRetention(horizon);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Immediately removes every contact trace outside the retention horizon,
+     * rather than waiting for incremental compaction.
+     *
+     * @throws UnsupportedOperationException if the tracer was opened from a file
+     */
+    public void compact() {
+        beginWrite();
+        try {
+            writableGraph().compact(Integer.MAX_VALUE);
+        } finally {
+            endWrite();
+        }
     }
 
     /**
@@ -19,9 +203,7 @@ public class ContactTracer {
      */
     public ContactTracer(List<Trace> traces) {
         this();
-        for (Trace trace : traces) {
-            addTrace(trace);
-        }
+        mutableGraph.addEdges(traces);
     }
 
     /**
@@ -31,13 +213,346 @@ public class ContactTracer {
      * already stored, do nothing.
      * 
      * @param trace to add
+     * @throws UnsupportedOperationException if the tracer was opened from a file
      * @require trace != null
      */
     public void addTrace(Trace trace) {
+        writableGraph();
+        if (lock != null) {
+            bufferTrace(trace);
+            return;
+        }
         String personA = trace.getPerson1();
         String personB = trace.getPerson2();
         int time = trace.getTime();
-        graph.addEdge(personA, personB, time);
+        addContact(mutableGraph.intern(personA), mutableGraph.intern(personB), time);
+    }
+
+    /**
+     * @return the graph to add traces to
+     * @throws UnsupportedOperationException if the tracer was opened from a file
+     */
+    private Graph writableGraph() {
+        if (mutableGraph == null) {
+            throw new UnsupportedOperationException("Contact graph file is read-only");
+        }
+        return mutableGraph;
+    }
+
+    /**
+     * Adds a contact to the graph and brings every subscription up to date.
+     */
+    private void addContact(int src, int dest, int time) {
+        if (!mutableGraph.addEdge(src, dest, time) || subscriptions.isEmpty()) {
+            return;
+        }
+        // Listeners may subscribe, cancel or add traces, so bring every
+        // subscription up to date before calling any of them
+        Subscription[] current = subscriptions.toArray(new Subscription[0]);
+        int[] notified = new int[current.length];
+        int[] reached = new int[current.length];
+        for (int i = 0; i < current.length; i++) {
+            notified[i] = current[i].search.reachedCount;
+            current[i].update(src, dest, time);
+            reached[i] = current[i].search.reachedCount;
+        }
+        for (int i = 0; i < current.length; i++) {
+            current[i].notifyExposed(notified[i], reached[i]);
+        }
+    }
+
+    private void bufferTrace(Trace trace) {
+        // Stripe by thread so concurrent writers rarely share a buffer
+        IngestBuffer stripe = stripes[(int) Thread.currentThread().getId()
+                & (stripes.length - 1)];
+        int buffered;
+        synchronized (stripe) {
+            stripe.traces.add(trace);
+            buffered = stripe.traces.size();
+        }
+        pending.incrementAndGet();
+        if (buffered >= PUBLISH_THRESHOLD && lock.writeLock().tryLock()) {
+            try {
+                publish();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves every buffered trace into the graph.
+     *
+     * @require the write lock is held
+     */
+    private void publish() {
+        for (IngestBuffer stripe : stripes) {
+            List<Trace> traces;
+            synchronized (stripe) {
+                if (stripe.traces.isEmpty()) {
+                    continue;
+                }
+                traces = stripe.traces;
+                stripe.traces = new ArrayList<>();
+            }
+            for (Trace trace : traces) {
+                addContact(mutableGraph.intern(trace.getPerson1()),
+                        mutableGraph.intern(trace.getPerson2()), trace.getTime());
+            }
+            pending.addAndGet(-traces.size());
+        }
+    }
+
+    /**
+     * Publishes every trace buffered by concurrent writers, so that queries
+     * started after this returns include every trace added before it was
+     * called. Does nothing unless the tracer is in concurrent mode.
+     */
+    public void flush() {
+        if (lock == null || pending.get() == 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            publish();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Starts a query against a consistent snapshot of the published graph.
+     */
+    private void beginRead() {
+        if (lock != null) {
+            lock.readLock().lock();
+        }
+    }
+
+    private void endRead() {
+        if (lock != null) {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void beginWrite() {
+        if (lock != null) {
+            lock.writeLock().lock();
+            if (pending.get() != 0) {
+                publish();
+            }
+        }
+    }
+
+    private void endWrite() {
+        if (lock != null) {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Streams contact traces from CSV text into the tracer without creating
+     * a Trace per record.
+     *
+     * Each line holds person1,person2,time with no quoting, so names must not
+     * contain commas or line breaks. Blank lines and a header line are
+     * skipped. The channel is read in fixed size chunks and names are interned
+     * straight from the UTF-8 bytes, so only previously unseen names allocate.
+     *
+     * @param channel to read CSV text from, until end of stream
+     * @return the number of traces read
+     * @throws IOException if reading fails or a line is malformed
+     * @throws UnsupportedOperationException if the tracer was opened from a file
+     * @require channel != null
+     */
+    public long loadCsv(ReadableByteChannel channel) throws IOException {
+        // Fail before consuming the channel if the tracer is read-only
+        writableGraph();
+        byte[] bytes = new byte[LOAD_CHUNK];
+        int limit = 0;
+        long records = 0;
+        long line = 0;
+        boolean eof = false;
+        while (!eof) {
+            int read = channel.read(ByteBuffer.wrap(bytes, limit, bytes.length - limit));
+            eof = read == -1;
+            limit += Math.max(read, 0);
+            int start = 0;
+            beginWrite();
+            try {
+                while (start < limit) {
+                    int end = indexOf(bytes, (byte) '\n', start, limit);
+                    if (end == -1) {
+                        if (!eof) {
+                            break;
+                        }
+                        end = limit;
+                    }
+                    line++;
+                    if (parseCsvLine(bytes, start, end, line)) {
+                        records++;
+                    }
+                    start = end + 1;
+                }
+            } finally {
+                endWrite();
+            }
+            // Carry the partial last line over to the next chunk
+            start = Math.min(start, limit);
+            System.arraycopy(bytes, start, bytes, 0, limit - start);
+            limit -= start;
+            if (limit == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+        }
+        return records;
+    }
+
+    private boolean parseCsvLine(byte[] bytes, int start, int end, long line)
+            throws IOException {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        if (start == end) {
+            return false;
+        }
+        int first = indexOf(bytes, (byte) ',', start, end);
+        int second = first == -1 ? -1 : indexOf(bytes, (byte) ',', first + 1, end);
+        if (second == -1) {
+            throw new IOException("Malformed trace on line " + line);
+        }
+        int time;
+        try {
+            time = parseInt(bytes, second + 1, end);
+        } catch (NumberFormatException e) {
+            if (line == 1) {
+                return false;
+            }
+            throw new IOException("Malformed trace time on line " + line);
+        }
+        int src = mutableGraph.intern(bytes, start, first - start);
+        int dest = mutableGraph.intern(bytes, first + 1, second - first - 1);
+        addContact(src, dest, time);
+        return true;
+    }
+
+    /**
+     * Streams contact traces from a binary trace log into the tracer without
+     * creating a Trace per record.
+     *
+     * Each record is little endian: the byte length and UTF-8 bytes of
+     * person1, the same for person2, then the time as a 4 byte int. Names
+     * may be at most MAX_NAME_LENGTH bytes long.
+     *
+     * @param channel to read records from, until end of stream
+     * @return the number of traces read
+     * @throws IOException if reading fails, a name length is negative or too
+     *         long, or the stream ends mid record
+     * @throws UnsupportedOperationException if the tracer was opened from a file
+     * @require channel != null
+     */
+    public long loadBinary(ReadableByteChannel channel) throws IOException {
+        // Fail before consuming the channel if the tracer is read-only
+        writableGraph();
+        byte[] bytes = new byte[LOAD_CHUNK];
+        int limit = 0;
+        long records = 0;
+        boolean eof = false;
+        while (!eof) {
+            int read = channel.read(ByteBuffer.wrap(bytes, limit, bytes.length - limit));
+            eof = read == -1;
+            limit += Math.max(read, 0);
+            int start = 0;
+            long needed = 0;
+            beginWrite();
+            try {
+                while (true) {
+                    // Each record needs 12 bytes plus the two names
+                    if (limit - start < 4) {
+                        needed = 4;
+                        break;
+                    }
+                    int length1 = readNameLength(bytes, start);
+                    if (limit - start < 8L + length1) {
+                        needed = 8L + length1;
+                        break;
+                    }
+                    int length2 = readNameLength(bytes, start + 4 + length1);
+                    long size = 12L + length1 + length2;
+                    if (limit - start < size) {
+                        needed = size;
+                        break;
+                    }
+                    int src = mutableGraph.intern(bytes, start + 4, length1);
+                    int dest = mutableGraph.intern(bytes, start + 8 + length1, length2);
+                    addContact(src, dest, readInt(bytes, start + (int) size - 4));
+                    records++;
+                    start += (int) size;
+                }
+            } finally {
+                endWrite();
+            }
+            System.arraycopy(bytes, start, bytes, 0, limit - start);
+            limit -= start;
+            if (eof && limit != 0) {
+                throw new IOException("Binary trace log ends part way through a record");
+            }
+            if (needed > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.max(needed, bytes.length * 2L));
+            }
+        }
+        return records;
+    }
+
+    private static int readNameLength(byte[] bytes, int offset) throws IOException {
+        int length = readInt(bytes, offset);
+        if (length < 0 || length > MAX_NAME_LENGTH) {
+            throw new IOException("Malformed binary trace record: name length " + length);
+        }
+        return length;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseInt(byte[] bytes, int start, int end) {
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        while (end > start && bytes[end - 1] == ' ') {
+            end--;
+        }
+        boolean negative = start < end && bytes[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 10) {
+            throw new NumberFormatException();
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException();
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException();
+        }
+        return (int) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff)
+                | (bytes[offset + 1] & 0xff) << 8
+                | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
     }
 
     /**
@@ -54,18 +569,22 @@ public class ContactTracer {
      * @require person1 != null && person2 != null
      */
     public List<Integer> getContactTimes(String person1, String person2) {
+        beginRead();
+        try {
+            return contactTimes(person1, person2);
+        } finally {
+            endRead();
+        }
+    }
+
+    private List<Integer> contactTimes(String person1, String person2) {
         List<Integer> result = new ArrayList<>();
-        Iterator<Graph.Edge> iter = graph.getVertexConnections(person1);
-        if (iter == null) {
+        int src = graph.getId(person1);
+        int dest = graph.getId(person2);
+        if (src == -1 || dest == -1) {
             return result;
         }
-        while (iter.hasNext()) {
-            Graph.Edge edge = iter.next();
-            if (edge.dest.equals(person2) || edge.src.equals(person2)) {
-                result.add(edge.time);
-            }
-        }
-        Collections.sort(result);
+        graph.addContactTimes(src, dest, result);
         return result;
     }
 
@@ -77,7 +596,7 @@ public class ContactTracer {
      * @return set of the person's direct contacts
      */
     public Set<String> getContacts(String person) {
-        return getContactsAfter(person, -1);
+        return getContactsAfter(person, Integer.MIN_VALUE);
     }
 
     /**
@@ -89,22 +608,42 @@ public class ContactTracer {
      * @return set of the person's direct contacts at or after the timestamp
      */
     public Set<String> getContactsAfter(String person, int timestamp) {
+        return getContactsBetween(person, timestamp, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets all the people that the given person has been in direct contact with
+     * between the two given timestamps (both inclusive).
+     *
+     * @param person to list direct contacts of
+     * @param from earliest contact time to include
+     * @param to latest contact time to include
+     * @return set of the person's direct contacts within the time range
+     */
+    public Set<String> getContactsBetween(String person, int from, int to) {
+        beginRead();
+        try {
+            return contactsBetween(person, from, to);
+        } finally {
+            endRead();
+        }
+    }
+
+    private Set<String> contactsBetween(String person, int from, int to) {
         Set<String> result = new HashSet<>();
-        Iterator<Graph.Edge> iter = graph.getVertexConnections(person);
-        if (iter == null) {
+        int src = graph.getId(person);
+        if (src == -1 || from > to) {
             return result;
         }
-        while (iter.hasNext()) {
-            Graph.Edge edge = iter.next();
-            if (!(timestamp == -1)) {
-                if (edge.time < timestamp) {
-                    continue;
-                }
-            }
-            if (edge.src.equals(person)) {
-                result.add(edge.dest);
-            } else {
-                result.add(edge.src);
+        // Only the slice of the time ordered edges inside the range is visited,
+        // and each distinct contact is named once however many edges it has
+        Search search = searches.get();
+        search.reset(graph.size());
+        int end = graph.upperBound(src, to);
+        for (int i = graph.lowerBound(src, from); i < end; i++) {
+            int neighbour = graph.neighbour(src, i);
+            if (search.mark(neighbour)) {
+                result.add(graph.getName(neighbour));
             }
         }
         return result;
@@ -121,123 +660,1723 @@ public class ContactTracer {
      * @return set of people who may have contracted the disease, originating from person
      */
     public Set<String> contactTrace(String person, int timeOfContagion) {
-        HashSet<String> result = new HashSet<>();
-        HashMap<String, Integer> visited = new HashMap<>();
-        result.add(person);
-        contractTraceRecursive(person, result, visited, timeOfContagion);
-        result.remove(person);
-        return result;
+        return contactTrace(person, timeOfContagion, TracePolicy.DEFAULT);
     }
 
-    private void contractTraceRecursive(String nextPerson,
-                                        HashSet<String> result,
-                                        HashMap<String, Integer> visited,
-                                        int infectPeriod) {
-        result.add(nextPerson);
-        visited.put(nextPerson, infectPeriod);
-        Iterator<Graph.Edge> iter = graph.adjMap.get(nextPerson).iterator();
+    /**
+     * Initiates a contact trace starting with the given person, who
+     * became contagious at timeOfContagion, under the given transmission rules.
+     *
+     * A person can be infected at every contact with someone contagious, and
+     * each infection starts its own infectious period. So with a limited
+     * infectious period a later infection can still pass the disease on after
+     * the window opened by an earlier one has closed, and every such chain of
+     * transmission is followed.
+     *
+     * @param person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param policy transmission rules to apply
+     * @return set of people who may have contracted the disease, originating from person
+     * @require policy != null
+     */
+    public Set<String> contactTrace(String person, int timeOfContagion,
+                                    TracePolicy policy) {
+        beginRead();
+        try {
+            return exposedBy(person, timeOfContagion, policy);
+        } finally {
+            endRead();
+        }
+    }
 
-        if (iter == null) {
-            return;
+    private Set<String> exposedBy(String person, int timeOfContagion,
+                                  TracePolicy policy) {
+        Set<String> result = new HashSet<>();
+        int src = graph.getId(person);
+        if (src == -1) {
+            return result;
         }
-        // Perform DFS
-        while (iter.hasNext()) {
-            Graph.Edge edge = iter.next();
-            // The person was not contagious
-            if (infectPeriod > edge.time) {
-                continue;
-            }
-            if (edge.dest.equals(nextPerson)) {
-                if (visited.containsKey(edge.src)) {
-                    if ((visited.get(edge.src) > edge.time + 60) ||
-                        visited.get(edge.src) == -1) {
-                        visited.put(edge.src, edge.time + 60);
-                    }
-                } else {
-                    contractTraceRecursive(edge.src, result, visited, edge.time + 60);
-                }
-                result.add(edge.src);
-            } else {
-                if (visited.containsKey(edge.dest)) {
-                    if ((visited.get(edge.dest) > edge.time + 60) ||
-                        visited.get(edge.dest) == -1) {
-                        visited.put(edge.dest, edge.time + 60);
-                    }
-                } else {
-                    contractTraceRecursive(edge.dest, result, visited, edge.time + 60);
-                }
-                result.add(edge.dest);
+        Search search = searches.get();
+        trace(search, src, timeOfContagion, policy);
+        for (int i = 0; i < search.reachedCount; i++) {
+            if (search.reached[i] != src) {
+                result.add(graph.getName(search.reached[i]));
             }
         }
+        return result;
+    }
+
+    /**
+     * Contact traces from the given person and records how each exposed
+     * person was reached.
+     *
+     * @param person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @return the transmission tree of the earliest possible infections
+     * @require person != null
+     */
+    public TransmissionTree explainTrace(String person, int timeOfContagion) {
+        return explainTrace(person, timeOfContagion, TracePolicy.DEFAULT);
     }
 
-    private class Graph {
-        private HashMap<String, LinkedList<Edge>> adjMap;
+    /**
+     * Contact traces from the given person under the given transmission rules
+     * and records how each exposed person was reached.
+     *
+     * The tree comes from the same single search as contactTrace: every
+     * exposed person is linked to the contagious person whose contact gave
+     * them their earliest infection time.
+     *
+     * @param person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param policy transmission rules to apply
+     * @return the transmission tree of the earliest possible infections
+     * @require person != null && policy != null
+     */
+    public TransmissionTree explainTrace(String person, int timeOfContagion,
+                                         TracePolicy policy) {
+        beginRead();
+        try {
+            int src = graph.getId(person);
+            if (src == -1) {
+                return new TransmissionTree(new String[] {person}, new int[] {-1},
+                        new int[] {timeOfContagion}, policy.getIncubation());
+            }
+            Search search = searches.get();
+            trace(search, src, timeOfContagion, policy);
 
-        private Graph() {
-            adjMap = new HashMap<>();
+            // Renumber the reached people densely, with the source first
+            int count = search.reachedCount;
+            String[] names = new String[count];
+            int[] predecessors = new int[count];
+            int[] infections = new int[count];
+            int[] positions = search.positions;
+            for (int i = 0; i < count; i++) {
+                positions[search.reached[i]] = i;
+            }
+            for (int i = 0; i < count; i++) {
+                int reached = search.reached[i];
+                names[i] = graph.getName(reached);
+                infections[i] = search.arrival(reached);
+                int predecessor = search.predecessors[reached];
+                predecessors[i] = predecessor == -1 ? -1 : positions[predecessor];
+            }
+            return new TransmissionTree(names, predecessors, infections,
+                    policy.getIncubation());
+        } finally {
+            endRead();
         }
+    }
 
-        private void addEdge(String src, String dest, int time) {
-            LinkedList<Edge> srcTmp;
-            LinkedList<Edge> destTmp;
-            Edge edge = new Edge(src, dest, time);
+    /**
+     * The people exposed by a contact trace, each linked to the person who
+     * exposed them at the earliest possible time.
+     */
+    public static class TransmissionTree {
+        private final String[] names;
+        private final int[] predecessors;
+        private final int[] infections;
+        private final int incubation;
+        private final Map<String, Integer> positions = new HashMap<>();
 
-            srcTmp = updateCurrentList(src, edge);
-            destTmp = updateCurrentList(dest, edge);
-            if (srcTmp != null) {
-                adjMap.put(src, srcTmp);
-            }
-            if (destTmp != null) {
-                adjMap.put(dest, destTmp);
+        private TransmissionTree(String[] names, int[] predecessors,
+                                 int[] infections, int incubation) {
+            this.names = names;
+            this.predecessors = predecessors;
+            this.infections = infections;
+            this.incubation = incubation;
+            for (int i = 0; i < names.length; i++) {
+                positions.put(names[i], i);
             }
         }
 
-        private LinkedList<Edge> updateCurrentList(String entry, Edge edge) {
-            LinkedList<Edge> tmp;
+        /**
+         * @return the person the trace started from
+         */
+        public String getSource() {
+            return names[0];
+        }
+
+        /**
+         * Gets everyone exposed, as contactTrace would return.
+         *
+         * @return set of people who may have contracted the disease
+         */
+        public Set<String> getExposed() {
+            Set<String> result = new HashSet<>();
+            for (int i = 1; i < names.length; i++) {
+                result.add(names[i]);
+            }
+            return result;
+        }
 
-            if (adjMap.containsKey(entry)) {
-                tmp = adjMap.get(entry);
-                if (tmp.contains(edge)) {
-                    return null;
-                } else {
-                    tmp.add(edge);
-                }
-            } else {
-                tmp = new LinkedList<>();
-                tmp.add(edge);
+        /**
+         * Gets the contagious person who exposed the given person.
+         *
+         * @param person to get the predecessor of
+         * @return the predecessor, or null if person is the source or not exposed
+         */
+        public String getPredecessor(String person) {
+            Integer position = positions.get(person);
+            if (position == null || predecessors[position] == -1) {
+                return null;
             }
+            return names[predecessors[position]];
+        }
 
-            sortTimeAscending(tmp);
-            return tmp;
+        /**
+         * Gets the time of the contact through which the given person was exposed.
+         *
+         * Contact times may be negative, so callers should check for
+         * Integer.MIN_VALUE, or that getPredecessor is not null, first.
+         *
+         * @param person to get the exposing contact of
+         * @return the contact time, or Integer.MIN_VALUE if person is the
+         *         source or not exposed
+         */
+        public int getContactTime(String person) {
+            Integer position = positions.get(person);
+            if (position == null || predecessors[position] == -1) {
+                return Integer.MIN_VALUE;
+            }
+            return infections[position] - incubation;
         }
 
-        private void sortTimeAscending(LinkedList<Edge> list) {
-            list.sort(Comparator.comparingInt(k -> k.time));
+        /**
+         * Gets the earliest time the given person could have become contagious.
+         *
+         * @param person to get the infection time of
+         * @return the infection time, or Integer.MAX_VALUE if not exposed
+         */
+        public int getInfectionTime(String person) {
+            Integer position = positions.get(person);
+            return position == null ? Integer.MAX_VALUE : infections[position];
         }
 
-        private void sortTimeDescending(LinkedList<Edge> list) {
-            list.sort((a, b) -> b.time - a.time);
+        /**
+         * Gets the chain of transmission from the source to the given person,
+         * in O(length of the chain).
+         *
+         * @param person to get the chain of transmission to
+         * @return the people from the source to person inclusive, or an empty
+         *         list if person was not exposed
+         */
+        public List<String> getPath(String person) {
+            LinkedList<String> path = new LinkedList<>();
+            Integer position = positions.get(person);
+            if (position == null) {
+                return path;
+            }
+            for (int i = position; i != -1; i = predecessors[i]) {
+                path.addFirst(names[i]);
+            }
+            return path;
         }
+    }
+
+    /**
+     * Starts tracking the people exposed by a contagious person, keeping the
+     * result up to date as further traces are added.
+     *
+     * @param person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param listener notified of every person newly exposed by a later trace
+     * @return a subscription holding the current exposed set
+     * @require person != null && listener != null
+     */
+    public Subscription subscribe(String person, int timeOfContagion,
+                                  ExposureListener listener) {
+        return subscribe(person, timeOfContagion, TracePolicy.DEFAULT, listener);
+    }
 
-        private Iterator<Edge> getVertexConnections(String person) {
-            if (adjMap.containsKey(person)) {
-                LinkedList<Edge> edges = adjMap.get(person);
-                return edges.iterator();
+    /**
+     * Starts tracking the people exposed by a contagious person under the
+     * given transmission rules, keeping the result up to date as further
+     * traces are added.
+     *
+     * Each subscription keeps the earliest infection time of every person.
+     * When a trace is added, only the times it improves are propagated
+     * onwards, and the listener is called for each person exposed for the
+     * first time once every subscription has been brought up to date.
+     *
+     * The listener runs on the thread that moves the trace into the graph.
+     * That is the thread adding the trace, except in concurrent mode where
+     * it is whichever writer, flush caller or background publisher thread
+     * publishes the batch holding the trace, while it holds the write lock.
+     * Listeners should therefore return quickly, and may use the tracer
+     * from their own thread but must not wait on other threads that do.
+     *
+     * Exposures are never withdrawn. Once a retention horizon evicts the
+     * contacts behind an exposure, the person stays exposed and can still
+     * pass the disease on through later contacts. So the subscription can
+     * then report people that contactTrace no longer returns.
+     *
+     * @param person to start contact tracing from
+     * @param timeOfContagion the exact time person became contagious
+     * @param policy transmission rules to apply
+     * @param listener notified of every person newly exposed by a later trace
+     * @return a subscription holding the current exposed set
+     * @throws IllegalArgumentException if policy has a limited infectious period,
+     *         as an earlier infection could then reach fewer people
+     * @require person != null && policy != null && listener != null
+     */
+    public Subscription subscribe(String person, int timeOfContagion,
+                                  TracePolicy policy, ExposureListener listener) {
+        if (policy.getInfectiousPeriod() != TracePolicy.UNLIMITED) {
+            throw new IllegalArgumentException(
+                    "Subscriptions require an unlimited infectious period");
+        }
+        beginWrite();
+        try {
+            Subscription subscription = new Subscription(person, timeOfContagion,
+                    policy, listener);
+            if (subscription.source != -1) {
+                trace(subscription.search, subscription.source, timeOfContagion,
+                        policy);
             }
-            return null;
+            subscriptions.add(subscription);
+            return subscription;
+        } finally {
+            endWrite();
         }
+    }
 
-        private class Edge {
-            private String src;
-            private String dest;
-            private int time;
+    /**
+     * Receives people newly exposed to a subscribed contact trace.
+     */
+    public interface ExposureListener {
+        /**
+         * Called when a new trace exposes a person for the first time.
+         *
+         * @param person who may have contracted the disease
+         * @param timeOfContagion the earliest time they could be contagious
+         */
+        void exposed(String person, int timeOfContagion);
+    }
+
+    /**
+     * A contact trace that is kept up to date as traces are added.
+     */
+    public class Subscription {
+        private final String person;
+        private final int timeOfContagion;
+        private final TracePolicy policy;
+        private final ExposureListener listener;
+        private final Search search = new Search();
+        // -1 until the person has a recorded contact
+        private int source;
+        private boolean cancelled;
+
+        private Subscription(String person, int timeOfContagion,
+                             TracePolicy policy, ExposureListener listener) {
+            this.person = person;
+            this.timeOfContagion = timeOfContagion;
+            this.policy = policy;
+            this.listener = listener;
+            source = graph.getId(person);
+        }
+
+        /**
+         * Gets everyone exposed so far. This is the set contactTrace would
+         * return, unless contacts have since been evicted by the retention
+         * horizon, because the subscription keeps the exposures they caused.
+         *
+         * @return set of people who may have contracted the disease
+         */
+        public Set<String> getExposed() {
+            beginRead();
+            try {
+                Set<String> result = new HashSet<>();
+                for (int i = 0; i < search.reachedCount; i++) {
+                    if (search.reached[i] != source) {
+                        result.add(graph.getName(search.reached[i]));
+                    }
+                }
+                return result;
+            } finally {
+                endRead();
+            }
+        }
+
+        /**
+         * Stops keeping this contact trace up to date.
+         */
+        public void cancel() {
+            beginWrite();
+            try {
+                cancelled = true;
+                subscriptions.remove(this);
+            } finally {
+                endWrite();
+            }
+        }
+
+        /**
+         * Propagates any infection time improved by a newly added contact.
+         */
+        private void update(int src, int dest, int time) {
+            if (source == -1) {
+                source = graph.getId(person);
+                if (source != -1) {
+                    trace(search, source, timeOfContagion, policy);
+                }
+                return;
+            }
+            search.ensureCapacity(graph.size());
+            int incubation = policy.getIncubation();
+            if (search.arrival(src) <= time) {
+                search.from = src;
+                search.relax(dest, time + incubation);
+            }
+            if (search.arrival(dest) <= time) {
+                search.from = dest;
+                search.relax(src, time + incubation);
+            }
+            if (search.heapSize != 0) {
+                settle(search, policy);
+            }
+        }
+
+        /**
+         * Calls the listener for the people reached in the range [from, to),
+         * unless this subscription has been cancelled in the meantime.
+         */
+        private void notifyExposed(int from, int to) {
+            for (int i = from; i < to && !cancelled; i++) {
+                int exposed = search.reached[i];
+                if (exposed != source) {
+                    listener.exposed(graph.getName(exposed), search.arrival(exposed));
+                }
+            }
+        }
+    }
+
+    /**
+     * Contact traces every seed of an outbreak cluster in parallel.
+     *
+     * @param seeds maps each index case to the time they became contagious
+     * @return the people exposed by each seed, and by the cluster as a whole
+     * @require seeds != null
+     */
+    public ClusterTrace contactTraceAll(Map<String, Integer> seeds) {
+        return contactTraceAll(seeds, TracePolicy.DEFAULT);
+    }
+
+    /**
+     * Contact traces every seed of an outbreak cluster in parallel, under the
+     * given transmission rules.
+     *
+     * Each seed is traced independently on the common ForkJoinPool, with
+     * every worker thread reusing its own search state between seeds.
+     *
+     * @param seeds maps each index case to the time they became contagious
+     * @param policy transmission rules to apply
+     * @return the people exposed by each seed, and by the cluster as a whole
+     * @require seeds != null && policy != null
+     */
+    public ClusterTrace contactTraceAll(Map<String, Integer> seeds,
+                                        TracePolicy policy) {
+        String[] people = seeds.keySet().toArray(new String[0]);
+        int[] times = new int[people.length];
+        for (int i = 0; i < people.length; i++) {
+            times[i] = seeds.get(people[i]);
+        }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Set<String>[] exposed = new Set[people.length];
+        // Workers share this thread's snapshot rather than locking per seed
+        beginRead();
+        try {
+            ForkJoinPool.commonPool().invoke(
+                    new TraceTask(people, times, policy, exposed, 0, people.length));
+        } finally {
+            endRead();
+        }
+
+        Map<String, Set<String>> exposures = new HashMap<>();
+        Set<String> union = new HashSet<>();
+        for (int i = 0; i < people.length; i++) {
+            exposures.put(people[i], exposed[i]);
+            union.addAll(exposed[i]);
+        }
+        return new ClusterTrace(exposures, union);
+    }
+
+    /**
+     * The result of contact tracing an outbreak cluster with many seeds.
+     */
+    public static class ClusterTrace {
+        private final Map<String, Set<String>> exposures;
+        private final Set<String> union;
+
+        private ClusterTrace(Map<String, Set<String>> exposures,
+                             Set<String> union) {
+            this.exposures = exposures;
+            this.union = union;
+        }
+
+        /**
+         * @return the seeds that were traced
+         */
+        public Set<String> getSeeds() {
+            return Collections.unmodifiableSet(exposures.keySet());
+        }
+
+        /**
+         * Gets the people exposed by a single seed, as contactTrace would.
+         *
+         * @param seed to get the exposed people of
+         * @return set of people exposed by seed, or an empty set if not a seed
+         */
+        public Set<String> getExposed(String seed) {
+            return exposures.getOrDefault(seed, Collections.emptySet());
+        }
+
+        /**
+         * @return set of people exposed by any seed of the cluster
+         */
+        public Set<String> getAllExposed() {
+            return union;
+        }
+    }
+
+    /**
+     * Splits a range of seeds in half until it is small enough to trace
+     * sequentially.
+     */
+    @SuppressWarnings("serial")
+    private class TraceTask extends RecursiveAction {
+        private static final int THRESHOLD = 4;
+
+        private final String[] people;
+        private final int[] times;
+        private final TracePolicy policy;
+        private final Set<String>[] exposed;
+        private final int from;
+        private final int to;
+
+        private TraceTask(String[] people, int[] times, TracePolicy policy,
+                          Set<String>[] exposed, int from, int to) {
+            this.people = people;
+            this.times = times;
+            this.policy = policy;
+            this.exposed = exposed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    exposed[i] = exposedBy(people[i], times[i], policy);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TraceTask(people, times, policy, exposed, from, mid),
+                    new TraceTask(people, times, policy, exposed, mid, to));
+        }
+    }
+
+    /**
+     * Computes the earliest time every person reachable from src could have
+     * become contagious, in the style of Dijkstra's algorithm.
+     *
+     * People are settled in order of infection time, and each settled person
+     * only scans the slice of their time ordered edges during which they were
+     * contagious. With an unlimited infectious period each person is expanded
+     * exactly once. With a limited one a later infection is expanded again if
+     * it keeps the person contagious past the end of every window expanded
+     * so far, but only over the contacts after that end, so each contact is
+     * still scanned at most once from each side. The policy is read into
+     * locals up front, and the edge loop itself runs inside the graph, so it
+     * is free of per-edge dispatch and branches.
+     */
+    private void trace(Search search, int src, int timeOfContagion,
+                       TracePolicy policy) {
+        search.reset(graph.size());
+        search.infectiousPeriod = policy.getInfectiousPeriod();
+        search.from = -1;
+        search.relax(src, timeOfContagion);
+        settle(search, policy);
+    }
+
+    /**
+     * Runs the search until every queued infection time has been settled.
+     */
+    private void settle(Search search, TracePolicy policy) {
+        final int incubation = policy.getIncubation();
+        final int infectiousPeriod = policy.getInfectiousPeriod();
+        final boolean unlimited = infectiousPeriod == TracePolicy.UNLIMITED;
+
+        while (search.heapSize != 0) {
+            long entry = search.poll();
+            int person = (int) entry;
+            int time = (int) (entry >> 32);
+            int start;
+            int end;
+            if (unlimited) {
+                if (time != search.arrival(person)) {
+                    // Stale entry superseded by an earlier infection time
+                    continue;
+                }
+                start = graph.lowerBound(person, time);
+                end = graph.degree(person);
+            } else {
+                int covered = search.covered[person];
+                int until = (int) Math.min(Integer.MAX_VALUE,
+                        (long) time + infectiousPeriod);
+                if (until <= covered) {
+                    // Window lies within those already expanded
+                    continue;
+                }
+                // Windows are expanded in order of start time, so together
+                // they cover every contact from time up to covered
+                start = covered < time ? graph.lowerBound(person, time)
+                        : graph.upperBound(person, covered);
+                end = graph.upperBound(person, until);
+                search.covered[person] = until;
+            }
+            search.from = person;
+            graph.relaxContacts(search, person, start, end, incubation);
+        }
+    }
+
+    /**
+     * Periodically publishes the buffered traces of a concurrent tracer,
+     * cancelling itself once the tracer has been garbage collected.
+     */
+    private static class Publisher implements Runnable {
+        private final WeakReference<ContactTracer> tracer;
+        private volatile ScheduledFuture<?> future;
+
+        private Publisher(ContactTracer tracer) {
+            this.tracer = new WeakReference<>(tracer);
+        }
+
+        @Override
+        public void run() {
+            ContactTracer target = tracer.get();
+            if (target == null) {
+                future.cancel(false);
+                return;
+            }
+            target.flush();
+        }
+    }
+
+    /**
+     * Traces appended by concurrent writers that are yet to be published.
+     */
+    private static class IngestBuffer {
+        private List<Trace> traces = new ArrayList<>();
+    }
+
+    /**
+     * Reusable working state for a single contact trace.
+     *
+     * Infection times are held in arrays indexed by person id and are lazily
+     * invalidated with an epoch counter, so starting a new trace costs O(1)
+     * rather than O(people). The priority queue is a binary min heap of
+     * (time, person) pairs packed into longs.
+     *
+     * Whenever a person's infection time improves, the person being expanded
+     * at the time is recorded as their predecessor, which forms the
+     * transmission tree of the search. With a limited infectious period, the
+     * latest time up to which each person's contacts have been expanded is
+     * also kept, and later infections that would extend it are queued too.
+     */
+    private static class Search {
+        private static final int UNREACHED = Integer.MAX_VALUE;
+
+        private int[] arrivals = new int[0];
+        private int[] predecessors = new int[0];
+        private int[] covered = new int[0];
+        private int infectiousPeriod = TracePolicy.UNLIMITED;
+        // Scratch space for renumbering reached people, valid only for them
+        private int[] positions = new int[0];
+        private int from;
+        private int[] stamps = new int[0];
+        private int epoch;
+        private int[] reached = new int[16];
+        private int reachedCount;
+        private long[] heap = new long[16];
+        private int heapSize;
+
+        private void reset(int people) {
+            ensureCapacity(people);
+            if (++epoch == 0) {
+                Arrays.fill(stamps, 0);
+                epoch = 1;
+            }
+            reachedCount = 0;
+            heapSize = 0;
+        }
+
+        private void ensureCapacity(int people) {
+            if (arrivals.length < people) {
+                int capacity = Math.max(people, arrivals.length * 2);
+                arrivals = Arrays.copyOf(arrivals, capacity);
+                predecessors = Arrays.copyOf(predecessors, capacity);
+                covered = Arrays.copyOf(covered, capacity);
+                positions = new int[capacity];
+                stamps = Arrays.copyOf(stamps, capacity);
+            }
+        }
+
+        /**
+         * @return whether person was unmarked in this search, marking them
+         */
+        private boolean mark(int person) {
+            if (stamps[person] == epoch) {
+                return false;
+            }
+            stamps[person] = epoch;
+            return true;
+        }
+
+        private int arrival(int person) {
+            return stamps[person] == epoch ? arrivals[person] : UNREACHED;
+        }
+
+        private void relax(int person, int time) {
+            if (stamps[person] != epoch) {
+                stamps[person] = epoch;
+                if (reachedCount == reached.length) {
+                    reached = Arrays.copyOf(reached, reachedCount * 2);
+                }
+                reached[reachedCount++] = person;
+                covered[person] = Integer.MIN_VALUE;
+            } else if (arrivals[person] <= time) {
+                // A later infection only matters if it would keep the person
+                // contagious past every window expanded so far
+                if (infectiousPeriod != TracePolicy.UNLIMITED
+                        && (long) time + infectiousPeriod > covered[person]) {
+                    push(((long) time << 32) | person);
+                }
+                return;
+            }
+            arrivals[person] = time;
+            predecessors[person] = from;
+            push(((long) time << 32) | person);
+        }
+
+        private void push(long entry) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+            }
+            int child = heapSize++;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (heap[parent] <= entry) {
+                    break;
+                }
+                heap[child] = heap[parent];
+                child = parent;
+            }
+            heap[child] = entry;
+        }
+
+        private long poll() {
+            long top = heap[0];
+            long last = heap[--heapSize];
+            int parent = 0;
+            int child;
+            while ((child = 2 * parent + 1) < heapSize) {
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[parent] = heap[child];
+                parent = child;
+            }
+            heap[parent] = last;
+            return top;
+        }
+    }
+
+    /**
+     * Read-only view of an undirected contact graph over dense person ids, where
+     * the contacts of each person are indexed from 0 in time order.
+     */
+    private interface ContactGraph {
+        int size();
+
+        /**
+         * @return the id of person, or -1 if they have no recorded contacts
+         */
+        int getId(String person);
+
+        String getName(int person);
+
+        int degree(int person);
+
+        int neighbour(int person, int index);
+
+        int time(int person, int index);
+
+        /**
+         * @return the index of the first contact of person at or after time
+         */
+        int lowerBound(int person, int time);
+
+        /**
+         * @return the index of the first contact of person strictly after time
+         */
+        int upperBound(int person, int time);
+
+        /**
+         * Relaxes the infection time of every contact of person in the index
+         * range [from, to) to the contact time plus incubation.
+         */
+        void relaxContacts(Search search, int person, int from, int to,
+                           int incubation);
+
+        /**
+         * Appends the times person1 and person2 were in contact, ascending.
+         */
+        void addContactTimes(int person1, int person2, List<Integer> result);
+    }
+
+    /**
+     * Undirected contact graph over interned person ids.
+     *
+     * Each person owns a pair of parallel arrays holding the id of the other
+     * person and the time of every contact they were involved in. The arrays
+     * are kept sorted by time (then by neighbour id) using binary search
+     * insertion, which also makes duplicate detection O(log n).
+     *
+     * A secondary index maps every unordered pair of people to the sorted
+     * times they were in contact, so pair queries never scan adjacency.
+     *
+     * With a retention horizon, contacts before the cutoff are hidden from
+     * lowerBound and the pair index straight away, then removed from the
+     * front of each array by an incremental sweep that advances a few people
+     * and pairs on every insert.
+     */
+    private class Graph implements ContactGraph {
+        private static final int INITIAL_CAPACITY = 4;
+        private static final int COMPACT_STEP = 8;
+
+        private SymbolTable symbols;
+        private int[][] neighbours;
+        private int[][] times;
+        private int[] degrees;
+        private int size;
+        private LongIntMap pairs;
+        private int[][] pairTimes;
+        private int[] pairCounts;
+        private long[] pairKeys;
+        private int pairSlots;
+        private int[] freePairs;
+        private int freePairCount;
+
+        private int horizon = RETAIN_ALL;
+        private int latest = Integer.MIN_VALUE;
+        private int cutoff = Integer.MIN_VALUE;
+        private boolean sweeping;
+        private int sweepCutoff = Integer.MIN_VALUE;
+        private int sweepPerson;
+        private int sweepPair;
+
+        private Graph() {
+            symbols = new SymbolTable();
+            neighbours = new int[INITIAL_CAPACITY][];
+            times = new int[INITIAL_CAPACITY][];
+            degrees = new int[INITIAL_CAPACITY];
+            pairs = new LongIntMap();
+            pairTimes = new int[INITIAL_CAPACITY][];
+            pairCounts = new int[INITIAL_CAPACITY];
+            pairKeys = new long[INITIAL_CAPACITY];
+            freePairs = new int[INITIAL_CAPACITY];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String getName(int person) {
+            return symbols.getName(person);
+        }
+
+        public int degree(int person) {
+            return degrees[person];
+        }
+
+        public int neighbour(int person, int index) {
+            return neighbours[person][index];
+        }
+
+        public int time(int person, int index) {
+            return times[person][index];
+        }
+
+        public void relaxContacts(Search search, int person, int from, int to,
+                                  int incubation) {
+            int[] personNeighbours = neighbours[person];
+            int[] personTimes = times[person];
+            for (int i = from; i < to; i++) {
+                search.relax(personNeighbours[i], personTimes[i] + incubation);
+            }
+        }
+
+        public void addContactTimes(int person1, int person2, List<Integer> result) {
+            int pair = pairs.get(LongIntMap.pairKey(person1, person2));
+            if (pair == LongIntMap.NO_VALUE) {
+                return;
+            }
+            // Pair times are kept in ascending order so no sorting is required
+            int[] pairTime = pairTimes[pair];
+            int count = pairCounts[pair];
+            for (int i = firstLive(pairTime, count); i < count; i++) {
+                result.add(pairTime[i]);
+            }
+        }
+
+        public int getId(String person) {
+            return symbols.getId(person);
+        }
+
+        /**
+         * @return the id of person, assigning a new one if required
+         */
+        public int intern(String person) {
+            return addPerson(symbols.intern(person));
+        }
+
+        /**
+         * @return the id of the person named by a UTF-8 byte range, assigning
+         * a new one if required
+         */
+        public int intern(byte[] bytes, int offset, int length) {
+            return addPerson(symbols.intern(bytes, offset, length));
+        }
+
+        /**
+         * Allocates adjacency for id if the symbol table has just assigned it.
+         */
+        private int addPerson(int id) {
+            if (id < size) {
+                return id;
+            }
+            if (size == degrees.length) {
+                int capacity = size * 2;
+                neighbours = Arrays.copyOf(neighbours, capacity);
+                times = Arrays.copyOf(times, capacity);
+                degrees = Arrays.copyOf(degrees, capacity);
+            }
+            neighbours[size] = new int[INITIAL_CAPACITY];
+            times[size] = new int[INITIAL_CAPACITY];
+            return size++;
+        }
+
+        public boolean addEdge(int srcId, int destId, int time) {
+            if (time < cutoff || !insert(srcId, destId, time)) {
+                return false;
+            }
+            if (srcId != destId) {
+                insert(destId, srcId, time);
+            }
+            insertPairTime(srcId, destId, time);
+            if (time > latest) {
+                latest = time;
+                updateCutoff();
+            }
+            if (sweeping) {
+                compact(COMPACT_STEP);
+            }
+            return true;
+        }
+
+        public void setRetention(int horizon) {
+            if (horizon < 0) {
+                throw new IllegalArgumentException("Retention horizon must not be negative");
+            }
+            this.horizon = horizon;
+            updateCutoff();
+        }
+
+        private void updateCutoff() {
+            if (horizon == RETAIN_ALL || latest == Integer.MIN_VALUE) {
+                return;
+            }
+            int next = (int) Math.max(Integer.MIN_VALUE, (long) latest - horizon);
+            if (next > cutoff) {
+                cutoff = next;
+                if (!sweeping) {
+                    startSweep();
+                }
+            }
+        }
+
+        private void startSweep() {
+            sweeping = true;
+            sweepCutoff = cutoff;
+            sweepPerson = 0;
+            sweepPair = 0;
+        }
+
+        /**
+         * Physically removes evicted contacts from up to budget people and
+         * budget pairs.
+         */
+        public void compact(int budget) {
+            int people = budget;
+            while (sweeping && people > 0 && sweepPerson < size) {
+                compactPerson(sweepPerson++);
+                people--;
+            }
+            int pairsLeft = budget;
+            while (sweeping && pairsLeft > 0 && sweepPair < pairSlots) {
+                compactPair(sweepPair++);
+                pairsLeft--;
+            }
+            if (sweeping && sweepPerson == size && sweepPair == pairSlots) {
+                sweeping = false;
+                if (cutoff > sweepCutoff) {
+                    // The cutoff moved during the sweep, so go round again
+                    startSweep();
+                    if (budget == Integer.MAX_VALUE) {
+                        compact(budget);
+                    }
+                }
+            }
+        }
+
+        private void compactPerson(int person) {
+            int expired = firstAtOrAfter(person, cutoff);
+            if (expired == 0) {
+                return;
+            }
+            int degree = degrees[person] - expired;
+            int capacity = neighbours[person].length;
+            if (degree < capacity / 4 && capacity > INITIAL_CAPACITY) {
+                // Shrink so the memory of evicted contacts is released
+                capacity = Math.max(INITIAL_CAPACITY, degree * 2);
+                neighbours[person] = Arrays.copyOfRange(neighbours[person],
+                        expired, expired + capacity);
+                times[person] = Arrays.copyOfRange(times[person],
+                        expired, expired + capacity);
+            } else {
+                System.arraycopy(neighbours[person], expired, neighbours[person], 0, degree);
+                System.arraycopy(times[person], expired, times[person], 0, degree);
+            }
+            degrees[person] = degree;
+        }
+
+        private void compactPair(int pair) {
+            int[] pairTime = pairTimes[pair];
+            if (pairTime == null) {
+                return;
+            }
+            int count = pairCounts[pair];
+            int expired = firstLive(pairTime, count);
+            if (expired == 0) {
+                return;
+            }
+            if (expired == count) {
+                // Release the slot so the pair index does not grow forever
+                pairs.remove(pairKeys[pair]);
+                pairTimes[pair] = null;
+                pairCounts[pair] = 0;
+                if (freePairCount == freePairs.length) {
+                    freePairs = Arrays.copyOf(freePairs, freePairCount * 2);
+                }
+                freePairs[freePairCount++] = pair;
+                return;
+            }
+            count -= expired;
+            if (count < pairTime.length / 4 && pairTime.length > INITIAL_CAPACITY) {
+                pairTimes[pair] = Arrays.copyOfRange(pairTime, expired,
+                        expired + Math.max(INITIAL_CAPACITY, count * 2));
+            } else {
+                System.arraycopy(pairTime, expired, pairTime, 0, count);
+            }
+            pairCounts[pair] = count;
+        }
+
+        /**
+         * @return the index of the first of count sorted times at or after
+         * the cutoff
+         */
+        private int firstLive(int[] sortedTimes, int count) {
+            if (count == 0 || sortedTimes[0] >= cutoff) {
+                return 0;
+            }
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sortedTimes[mid] < cutoff) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void insertPairTime(int src, int dest, int time) {
+            int pair = pairSlot(src, dest);
+            int count = pairCounts[pair];
+            int[] pairTime = pairTimes[pair];
+            if (count == pairTime.length) {
+                pairTime = Arrays.copyOf(pairTime, count * 2);
+                pairTimes[pair] = pairTime;
+            }
+            // Contacts mostly arrive in time order so search from the end
+            int index = count;
+            while (index > 0 && pairTime[index - 1] > time) {
+                index--;
+            }
+            System.arraycopy(pairTime, index, pairTime, index + 1, count - index);
+            pairTime[index] = time;
+            pairCounts[pair]++;
+        }
+
+        private int pairSlot(int src, int dest) {
+            long key = LongIntMap.pairKey(src, dest);
+            int pair = pairs.get(key);
+            if (pair != LongIntMap.NO_VALUE) {
+                return pair;
+            }
+            if (freePairCount > 0) {
+                pair = freePairs[--freePairCount];
+            } else {
+                pair = pairSlots++;
+                if (pair == pairTimes.length) {
+                    pairTimes = Arrays.copyOf(pairTimes, pair * 2);
+                    pairCounts = Arrays.copyOf(pairCounts, pair * 2);
+                    pairKeys = Arrays.copyOf(pairKeys, pair * 2);
+                }
+            }
+            pairTimes[pair] = new int[INITIAL_CAPACITY];
+            pairKeys[pair] = key;
+            pairs.put(key, pair);
+            return pair;
+        }
+
+        /**
+         * Rebuilds the pair index from the sorted adjacency arrays. Walking
+         * each person's edges in time order appends pair times already sorted.
+         */
+        private void rebuildPairs() {
+            pairs = new LongIntMap(pairs.size());
+            pairTimes = new int[Math.max(INITIAL_CAPACITY, pairTimes.length)][];
+            pairCounts = new int[pairTimes.length];
+            pairKeys = new long[pairTimes.length];
+            pairSlots = 0;
+            freePairCount = 0;
+            for (int person = 0; person < size; person++) {
+                int[] personNeighbours = neighbours[person];
+                int[] personTimes = times[person];
+                for (int i = 0; i < degrees[person]; i++) {
+                    if (personNeighbours[i] < person) {
+                        continue;
+                    }
+                    int pair = pairSlot(person, personNeighbours[i]);
+                    int count = pairCounts[pair];
+                    if (count == pairTimes[pair].length) {
+                        pairTimes[pair] = Arrays.copyOf(pairTimes[pair], count * 2);
+                    }
+                    pairTimes[pair][count] = personTimes[i];
+                    pairCounts[pair]++;
+                }
+            }
+        }
+
+        /**
+         * Bulk loads the given traces, sorting and deduplicating each
+         * person's edges once rather than once per inserted trace.
+         *
+         * Gives the same adjacency as calling addEdge for every trace.
+         */
+        public void addEdges(List<Trace> traces) {
+            int count = traces.size();
+            int[] srcIds = new int[count];
+            int[] destIds = new int[count];
+            int[] edgeTimes = new int[count];
+            int i = 0;
+            for (Trace trace : traces) {
+                srcIds[i] = intern(trace.getPerson1());
+                destIds[i] = intern(trace.getPerson2());
+                edgeTimes[i] = trace.getTime();
+                latest = Math.max(latest, edgeTimes[i]);
+                i++;
+            }
+
+            // Size every touched person's arrays exactly once
+            int[] added = new int[size];
+            for (i = 0; i < count; i++) {
+                added[srcIds[i]]++;
+                if (srcIds[i] != destIds[i]) {
+                    added[destIds[i]]++;
+                }
+            }
+            int maxDegree = 0;
+            for (int person = 0; person < size; person++) {
+                int required = degrees[person] + added[person];
+                if (required > neighbours[person].length) {
+                    neighbours[person] = Arrays.copyOf(neighbours[person], required);
+                    times[person] = Arrays.copyOf(times[person], required);
+                }
+                maxDegree = Math.max(maxDegree, required);
+            }
+
+            // Append unsorted, then sort and deduplicate each person once
+            for (i = 0; i < count; i++) {
+                append(srcIds[i], destIds[i], edgeTimes[i]);
+                if (srcIds[i] != destIds[i]) {
+                    append(destIds[i], srcIds[i], edgeTimes[i]);
+                }
+            }
+            long[] keys = new long[maxDegree];
+            for (int person = 0; person < size; person++) {
+                if (added[person] != 0) {
+                    sortEdges(person, keys);
+                }
+            }
+            rebuildPairs();
+        }
+
+        private void append(int person, int contact, int time) {
+            neighbours[person][degrees[person]] = contact;
+            times[person][degrees[person]] = time;
+            degrees[person]++;
+        }
+
+        /**
+         * Sorts the edges of person by (time, contact) and drops duplicates.
+         * Each edge is packed into a single long so that a primitive sort
+         * orders both fields at once.
+         */
+        private void sortEdges(int person, long[] keys) {
+            int[] personNeighbours = neighbours[person];
+            int[] personTimes = times[person];
+            int degree = degrees[person];
+            for (int i = 0; i < degree; i++) {
+                keys[i] = ((long) personTimes[i] << 32) | personNeighbours[i];
+            }
+            Arrays.sort(keys, 0, degree);
+            int unique = 0;
+            for (int i = 0; i < degree; i++) {
+                if (unique > 0 && keys[i] == keys[i - 1]) {
+                    continue;
+                }
+                personTimes[unique] = (int) (keys[i] >> 32);
+                personNeighbours[unique] = (int) keys[i];
+                unique++;
+            }
+            degrees[person] = unique;
+        }
+
+        private boolean insert(int person, int contact, int time) {
+            int degree = degrees[person];
+            int index;
+            int last = degree - 1;
+            if (degree == 0 || times[person][last] < time
+                    || (times[person][last] == time && neighbours[person][last] < contact)) {
+                // Traces mostly arrive in time order, so try appending first
+                index = degree;
+            } else {
+                index = search(person, time, contact);
+                if (index >= 0) {
+                    return false;
+                }
+                index = -(index + 1);
+            }
+            if (degree == neighbours[person].length) {
+                neighbours[person] = Arrays.copyOf(neighbours[person], degree * 2);
+                times[person] = Arrays.copyOf(times[person], degree * 2);
+            }
+            System.arraycopy(neighbours[person], index,
+                    neighbours[person], index + 1, degree - index);
+            System.arraycopy(times[person], index,
+                    times[person], index + 1, degree - index);
+            neighbours[person][index] = contact;
+            times[person][index] = time;
+            degrees[person]++;
+            return true;
+        }
+
+        public int lowerBound(int person, int time) {
+            return firstAtOrAfter(person, Math.max(time, cutoff));
+        }
+
+        private int firstAtOrAfter(int person, int time) {
+            int[] personTimes = times[person];
+            int low = 0;
+            int high = degrees[person];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (personTimes[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the first edge of person strictly after time
+         */
+        public int upperBound(int person, int time) {
+            int[] personTimes = times[person];
+            int low = 0;
+            int high = degrees[person];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (personTimes[mid] <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Binary searches the edges of person for the (time, contact) pair.
+         *
+         * @return the index of the edge, or (-(insertion point) - 1) if absent
+         */
+        private int search(int person, int time, int contact) {
+            int[] personTimes = times[person];
+            int[] personNeighbours = neighbours[person];
+            int low = 0;
+            int high = degrees[person] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = Integer.compare(personTimes[mid], time);
+                if (cmp == 0) {
+                    cmp = Integer.compare(personNeighbours[mid], contact);
+                }
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    /**
+     * Read-only contact graph backed by a memory mapped file.
+     *
+     * The file is little endian and laid out as a header followed by:
+     * <pre>
+     * offsets    int[people + 1]   start of each person's contacts
+     * neighbours int[contacts]     contact ids, in time order per person
+     * times      int[contacts]     contact times, ascending per person
+     * names      int[people + 1]   start of each name in the name bytes
+     * nameBytes  byte[nameBytes]   UTF-8 names, padded to a multiple of 8
+     * hash       int[hashSlots]    open addressing index of id + 1 by name
+     * pairKeys   long[pairs]       ascending packed (low id, high id) pairs
+     * pairStarts int[pairs + 1]    start of each pair's times
+     * pairTimes  int[pairTimes]    contact times, ascending per pair
+     * </pre>
+     * Every section is mapped separately, so each must be under 2GB.
+     */
+    private static class MappedGraph implements ContactGraph {
+        private static final int MAGIC = 0x43544731;
+        private static final int VERSION = 2;
+        private static final int HEADER_BYTES = 32;
+
+        private int people;
+        private IntBuffer offsets;
+        private IntBuffer neighbours;
+        private IntBuffer times;
+        private IntBuffer names;
+        private ByteBuffer nameBytes;
+        private IntBuffer hash;
+        private int hashMask;
+        private LongBuffer pairKeys;
+        private IntBuffer pairStarts;
+        private IntBuffer pairTimes;
+
+        private static MappedGraph open(Path path) throws IOException {
+            MappedGraph graph = new MappedGraph();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_BYTES) {
+                    throw new IOException("Not a contact graph file: " + path);
+                }
+                ByteBuffer header = map(channel, 0, HEADER_BYTES);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("Not a contact graph file: " + path);
+                }
+                graph.people = header.getInt(8);
+                int contacts = header.getInt(12);
+                int pairs = header.getInt(16);
+                int pairTimes = header.getInt(20);
+                int nameBytes = header.getInt(24);
+                int hashSlots = header.getInt(28);
+                long[] sections = layout(graph.people, contacts, pairs, pairTimes,
+                        nameBytes, hashSlots);
+                if (channel.size() < sections[sections.length - 1]) {
+                    throw new IOException("Truncated contact graph file: " + path);
+                }
+                graph.offsets = mapInts(channel, sections, 0);
+                graph.neighbours = mapInts(channel, sections, 1);
+                graph.times = mapInts(channel, sections, 2);
+                graph.names = mapInts(channel, sections, 3);
+                graph.nameBytes = map(channel, sections[4], sections[5] - sections[4]);
+                graph.hash = mapInts(channel, sections, 5);
+                graph.hashMask = hashSlots - 1;
+                graph.pairKeys = map(channel, sections[6], sections[7] - sections[6])
+                        .asLongBuffer();
+                graph.pairStarts = mapInts(channel, sections, 7);
+                graph.pairTimes = mapInts(channel, sections, 8);
+            }
+            return graph;
+        }
+
+        /**
+         * @return the start of every section, followed by the end of the file
+         */
+        private static long[] layout(int people, int contacts, int pairs,
+                                     int pairTimes, int nameBytes, int hashSlots) {
+            long[] sizes = {
+                    4L * (people + 1),
+                    4L * contacts,
+                    4L * contacts,
+                    4L * (people + 1),
+                    (nameBytes + 7L) & ~7L,
+                    4L * hashSlots,
+                    8L * pairs,
+                    4L * (pairs + 1),
+                    4L * pairTimes
+            };
+            long[] sections = new long[sizes.length + 1];
+            sections[0] = HEADER_BYTES;
+            for (int i = 0; i < sizes.length; i++) {
+                sections[i + 1] = sections[i] + sizes[i];
+            }
+            return sections;
+        }
+
+        private static ByteBuffer map(FileChannel channel, long position,
+                                      long size) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    position, size);
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private static IntBuffer mapInts(FileChannel channel, long[] sections,
+                                         int section) throws IOException {
+            return map(channel, sections[section],
+                    sections[section + 1] - sections[section]).asIntBuffer();
+        }
+
+        private static int hash(byte[] name) {
+            // Shared with the in-memory symbol table, so the index can be
+            // probed without decoding names
+            return SymbolTable.hash(name, 0, name.length);
+        }
+
+        private static void write(ContactGraph graph, Path path) throws IOException {
+            int people = graph.size();
+            long contacts = 0;
+            long pairs = 0;
+            long pairTimes = 0;
+            long nameBytes = 0;
+            byte[][] encoded = new byte[people][];
+            int[] lastSeen = new int[people];
+            Arrays.fill(lastSeen, -1);
+            for (int person = 0; person < people; person++) {
+                encoded[person] = graph.getName(person).getBytes(StandardCharsets.UTF_8);
+                nameBytes += encoded[person].length;
+                int degree = graph.degree(person);
+                contacts += degree;
+                for (int i = 0; i < degree; i++) {
+                    int contact = graph.neighbour(person, i);
+                    if (contact < person) {
+                        continue;
+                    }
+                    pairTimes++;
+                    if (lastSeen[contact] != person) {
+                        lastSeen[contact] = person;
+                        pairs++;
+                    }
+                }
+            }
+            if (contacts > Integer.MAX_VALUE / 4 || pairs > Integer.MAX_VALUE / 8
+                    || nameBytes > Integer.MAX_VALUE - 8) {
+                throw new IOException("Contact graph is too large for the file format");
+            }
+            int hashSlots = Integer.highestOneBit(Math.max(1, people)) << 2;
+            long[] sections = layout(people, (int) contacts, (int) pairs,
+                    (int) pairTimes, (int) nameBytes, hashSlots);
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                SectionWriter header = new SectionWriter(channel, 0);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(people);
+                header.putInt((int) contacts);
+                header.putInt((int) pairs);
+                header.putInt((int) pairTimes);
+                header.putInt((int) nameBytes);
+                header.putInt(hashSlots);
+                header.flush();
+
+                writeContacts(graph, channel, sections);
+                writeNames(encoded, channel, sections, hashSlots);
+                writePairs(graph, channel, sections);
+            }
+        }
+
+        private static void writeContacts(ContactGraph graph, FileChannel channel,
+                                          long[] sections) throws IOException {
+            SectionWriter offsets = new SectionWriter(channel, sections[0]);
+            SectionWriter neighbours = new SectionWriter(channel, sections[1]);
+            SectionWriter times = new SectionWriter(channel, sections[2]);
+            int offset = 0;
+            for (int person = 0; person < graph.size(); person++) {
+                offsets.putInt(offset);
+                int degree = graph.degree(person);
+                for (int i = 0; i < degree; i++) {
+                    neighbours.putInt(graph.neighbour(person, i));
+                    times.putInt(graph.time(person, i));
+                }
+                offset += degree;
+            }
+            offsets.putInt(offset);
+            offsets.flush();
+            neighbours.flush();
+            times.flush();
+        }
+
+        private static void writeNames(byte[][] encoded, FileChannel channel,
+                                       long[] sections, int hashSlots) throws IOException {
+            SectionWriter names = new SectionWriter(channel, sections[3]);
+            SectionWriter nameBytes = new SectionWriter(channel, sections[4]);
+            int[] table = new int[hashSlots];
+            int offset = 0;
+            for (int person = 0; person < encoded.length; person++) {
+                names.putInt(offset);
+                nameBytes.put(encoded[person]);
+                offset += encoded[person].length;
+                int slot = hash(encoded[person]) & (hashSlots - 1);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (hashSlots - 1);
+                }
+                table[slot] = person + 1;
+            }
+            names.putInt(offset);
+            names.flush();
+            nameBytes.flush();
+            SectionWriter hash = new SectionWriter(channel, sections[5]);
+            for (int entry : table) {
+                hash.putInt(entry);
+            }
+            hash.flush();
+        }
+
+        /**
+         * Writes the pair index by grouping each person's contacts with
+         * people of an equal or higher id by neighbour, then time.
+         */
+        private static void writePairs(ContactGraph graph, FileChannel channel,
+                                       long[] sections) throws IOException {
+            SectionWriter keys = new SectionWriter(channel, sections[6]);
+            SectionWriter starts = new SectionWriter(channel, sections[7]);
+            SectionWriter times = new SectionWriter(channel, sections[8]);
+            long[] scratch = new long[16];
+            int written = 0;
+            for (int person = 0; person < graph.size(); person++) {
+                int degree = graph.degree(person);
+                if (scratch.length < degree) {
+                    scratch = new long[degree];
+                }
+                int count = 0;
+                for (int i = 0; i < degree; i++) {
+                    int contact = graph.neighbour(person, i);
+                    if (contact >= person) {
+                        // Flip the sign bit so signed times sort as unsigned
+                        scratch[count++] = ((long) contact << 32)
+                                | ((graph.time(person, i) ^ Integer.MIN_VALUE) & 0xffffffffL);
+                    }
+                }
+                Arrays.sort(scratch, 0, count);
+                for (int i = 0; i < count; i++) {
+                    int contact = (int) (scratch[i] >>> 32);
+                    if (i == 0 || contact != (int) (scratch[i - 1] >>> 32)) {
+                        keys.putLong(LongIntMap.pairKey(person, contact));
+                        starts.putInt(written);
+                    }
+                    times.putInt((int) scratch[i] ^ Integer.MIN_VALUE);
+                    written++;
+                }
+            }
+            starts.putInt(written);
+            keys.flush();
+            starts.flush();
+            times.flush();
+        }
+
+        public int size() {
+            return people;
+        }
+
+        public int getId(String person) {
+            byte[] name = person.getBytes(StandardCharsets.UTF_8);
+            int slot = hash(name) & hashMask;
+            int entry;
+            while ((entry = hash.get(slot)) != 0) {
+                if (nameEquals(entry - 1, name)) {
+                    return entry - 1;
+                }
+                slot = (slot + 1) & hashMask;
+            }
+            return -1;
+        }
+
+        private boolean nameEquals(int person, byte[] name) {
+            int start = names.get(person);
+            if (names.get(person + 1) - start != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (nameBytes.get(start + i) != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public String getName(int person) {
+            int start = names.get(person);
+            byte[] name = new byte[names.get(person + 1) - start];
+            // Absolute bulk get needs Java 13, so read through a duplicate
+            nameBytes.duplicate().position(start).get(name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        public int degree(int person) {
+            return offsets.get(person + 1) - offsets.get(person);
+        }
+
+        public int neighbour(int person, int index) {
+            return neighbours.get(offsets.get(person) + index);
+        }
+
+        public int time(int person, int index) {
+            return times.get(offsets.get(person) + index);
+        }
+
+        public int lowerBound(int person, int time) {
+            int base = offsets.get(person);
+            int low = 0;
+            int high = offsets.get(person + 1) - base;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times.get(base + mid) < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        public int upperBound(int person, int time) {
+            int base = offsets.get(person);
+            int low = 0;
+            int high = offsets.get(person + 1) - base;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times.get(base + mid) <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        public void relaxContacts(Search search, int person, int from, int to,
+                                  int incubation) {
+            int base = offsets.get(person);
+            for (int i = base + from; i < base + to; i++) {
+                search.relax(neighbours.get(i), times.get(i) + incubation);
+            }
+        }
+
+        public void addContactTimes(int person1, int person2, List<Integer> result) {
+            long key = LongIntMap.pairKey(person1, person2);
+            int low = 0;
+            int high = pairKeys.limit() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midKey = pairKeys.get(mid);
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    for (int i = pairStarts.get(mid); i < pairStarts.get(mid + 1); i++) {
+                        result.add(pairTimes.get(i));
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffers little endian values and writes them to a file channel
+     * starting from a fixed position.
+     */
+    private static class SectionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+
+        private SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+            buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
 
-            private Edge(String personA, String personB, int time) {
-                this.time = time;
-                src = personA;
-                dest = personB;
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
             }
+            buffer.clear();
         }
     }
-}
+}
\ No newline at end of file
@@ -23,28 +23,14 @@ public class ErdosNumbers {
      * @param papers List of papers and their authors
      */
     public ErdosNumbers(List<String> papers) {
-        // TODO: implement this
         this.papers = papers;
         graph = new Graph();
         for (String paper : papers) {
             String[] parts = paper.split(":");
-            String paperName = parts[0];
-            String[] authors = parts[1].split("\\|");
-            if (authors.length == 1) {
-                graph.addEdge(paperName, authors[0], authors[0]);
-                continue;
-            }
-            for (int i = 0; i < authors.length; i++) {
-                String primary = authors[i];
-                for (int j = i + 1; j < authors.length; j++) {
-                    String secondary = authors[j];
-                    graph.addEdge(paperName, primary, secondary);
-                }
-            }
+            graph.addPaper(parts[0], parts[1].split("\\|"));
         }
-        graph.weightEdges();
-        Vertex src = graph.vertexList.get(ERDOS);
-        graph.calculatePaths(src);
+        graph.buildAdjacency();
+        graph.calculatePaths(graph.symbols.getId(ERDOS));
     }
     
     /**
@@ -55,7 +41,7 @@ public class ErdosNumbers {
      * @return the unique set of papers this author has written.
      */
     public Set<String> getPapers(String author) {
-        return graph.getIncidentEdges(author);
+        return graph.getPapers(author);
     }
 
     /**
@@ -77,11 +63,8 @@ public class ErdosNumbers {
      * @return the connectivity of Erdos to all other authors.
      */
     public boolean isErdosConnectedToAll() {
-        // TODO: implement this
-        for (String author : graph.vertexList.keySet()) {
-            Vertex vertex = graph.vertexList.get(author);
-            calculateErdosNumber(vertex.author);
-            if (vertex.erdosNo == Integer.MAX_VALUE) {
+        for (int erdosNo : graph.erdosNumbers) {
+            if (erdosNo == Integer.MAX_VALUE) {
                 return false;
             }
         }
@@ -104,9 +87,50 @@ public class ErdosNumbers {
      * @return authors' Erdos number or otherwise Integer.MAX_VALUE
      */
     public int calculateErdosNumber(String author) {
-        Vertex dest = graph.vertexList.get(author);
+        int id = graph.symbols.getId(author);
         
-        return dest.erdosNo;
+        return id == -1 ? Integer.MAX_VALUE : graph.erdosNumbers[id];
+    }
+
+    /**
+     * Calculates the collaboration distance of an author from any root
+     * author, measured in the same way as an Erdos number is from Erdos.
+     *
+     * The distances of every author from the most recently used roots are
+     * kept, so only the first query from a root searches the graph.
+     *
+     * @param root author to measure from
+     * @param author to calculate the distance of
+     * @return author's distance from root or otherwise Integer.MAX_VALUE
+     */
+    public int calculateNumber(String root, String author) {
+        int rootId = graph.symbols.getId(root);
+        int id = graph.symbols.getId(author);
+        if (rootId == -1 || id == -1) {
+            return Integer.MAX_VALUE;
+        }
+        return graph.distancesFrom(rootId)[id];
+    }
+
+    /**
+     * Calculates the length of the shortest chain of collaborations between
+     * two authors.
+     *
+     * Uses the cached distances from either author if there are any, and
+     * otherwise searches from both authors at once, which usually visits
+     * far fewer authors than a full search from one of them.
+     *
+     * @param authorA to calculate the distance from
+     * @param authorB to calculate the distance to
+     * @return the distance between the authors or otherwise Integer.MAX_VALUE
+     */
+    public int calculateDistance(String authorA, String authorB) {
+        int idA = graph.symbols.getId(authorA);
+        int idB = graph.symbols.getId(authorB);
+        if (idA == -1 || idB == -1) {
+            return Integer.MAX_VALUE;
+        }
+        return graph.distance(idA, idB);
     }
 
     /**
@@ -119,19 +143,20 @@ public class ErdosNumbers {
      * @return average Erdos number of paper's authors
      */
     public double averageErdosNumber(String paper) {
-        int erdosTotal = 0;
+        double erdosTotal = 0;
         int authorCount = 0;
-        Set<Vertex> authors = new HashSet<>();
-        LinkedList<Vertex> vertices = graph.getVertices(paper);
-        for (Vertex vertex : vertices) {
-            erdosTotal += vertex.erdosNo;
-            authorCount++;
+        int[] authors = graph.getAuthors(paper);
+        if (authors != null) {
+            for (int author : authors) {
+                erdosTotal += graph.erdosNumbers[author];
+                authorCount++;
+            }
         }
         if (authorCount == 0) {
             authorCount = 1;
         }
 
-        return ((double) erdosTotal)/authorCount;
+        return erdosTotal/authorCount;
     }
 
     /**
@@ -146,308 +171,438 @@ public class ErdosNumbers {
      * @return author's weighted Erdos number
      */
     public double calculateWeightedErdosNumber(String author) {
-        Vertex dest = graph.vertexList.get(author);
-        return graph.vertexList.get(author).weightedErdosNo;
+        int id = graph.symbols.getId(author);
+        return id == -1 ? Double.MAX_VALUE : graph.weightedErdosNumbers[id];
     }
 
+    /**
+     * Collaboration graph with a single weighted edge per pair of co-authors,
+     * over author ids from a symbol table.
+     *
+     * Papers are kept apart from the graph, as the authors of each paper and
+     * a posting list of the papers of each author, so the cost of a search
+     * depends on the number of distinct collaborators rather than papers.
+     */
     private class Graph {
-        private HashMap<Vertex, LinkedList<Edge>> adjMap;
-        private HashMap<String, LinkedList<Vertex>> edgeList;
-        private HashMap<String, Vertex> vertexList;
+        private static final int INITIAL_CAPACITY = 4;
+        private static final int CACHED_ROOTS = 16;
+
+        private SymbolTable symbols;
+        private int authorCount;
+        private int[][] authorPapers;
+        private int[] paperCounts;
+        private int[][] collaborators;
+        private int[] collaboratorCounts;
+        private LongIntMap collaborations;
+        private SymbolTable paperSymbols;
+        private ArrayList<int[]> paperAuthors;
+        private int[] offsets;
+        private int[] neighbours;
+        private double[] weights;
+        private int[] erdosNumbers;
+        private double[] weightedErdosNumbers;
+        private int erdosId;
+        private LinkedHashMap<Integer, int[]> distanceCache;
+        private int[] stamps;
+        private int epoch;
+        private Frontier forward;
+        private Frontier backward;
 
         private Graph() {
-            adjMap = new HashMap<>();
-            edgeList = new HashMap<>();
-            vertexList = new HashMap<>();
+            symbols = new SymbolTable();
+            authorPapers = new int[INITIAL_CAPACITY][];
+            paperCounts = new int[INITIAL_CAPACITY];
+            collaborators = new int[INITIAL_CAPACITY][];
+            collaboratorCounts = new int[INITIAL_CAPACITY];
+            collaborations = new LongIntMap();
+            paperSymbols = new SymbolTable();
+            paperAuthors = new ArrayList<>();
+            // Access ordered, so the eldest entry is the least recently used
+            distanceCache = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                    return size() > CACHED_ROOTS;
+                }
+            };
         }
 
-        private void weightEdges() {
-            LinkedList<Edge> visited = new LinkedList<>();
-            for (Vertex src : adjMap.keySet()) {
-                LinkedList<Edge> edges = adjMap.get(src);
-                for (Edge edge : edges) {
-                    if (visited.contains(edge)) {
-                        continue;
-                    } else {
-                        edge.weight = 0;
-                    }
-                    edge.addWeight(1);
-                    for (Edge edge1 : edges) {
-                        if (!edge.equals(edge1)) {
-                            if ((edge.primary.equals(edge1.primary) &&
-                                edge.secondary.equals(edge1.secondary)) ||
-                                (edge.secondary.equals(edge1.primary) &&
-                                edge.primary.equals(edge1.secondary))) {
-                                edge.addWeight(1);
-                            }
-                            visited.add(edge);
-                        }
+        /**
+         * Breadth first search, where the distance doubles as the visited
+         * flag so each author is queued exactly once.
+         *
+         * @return the collaboration distance of every author from src, or
+         * Integer.MAX_VALUE for authors not connected to them
+         */
+        private int[] breadthFirst(int src) {
+            int[] distances = new int[authorCount];
+            Arrays.fill(distances, Integer.MAX_VALUE);
+            int[] queue = new int[authorCount];
+            int head = 0;
+            int tail = 0;
+            distances[src] = 0;
+            queue[tail++] = src;
+            while (head < tail) {
+                int author = queue[head++];
+                int depth = distances[author] + 1;
+                for (int i = offsets[author]; i < offsets[author + 1]; i++) {
+                    if (distances[neighbours[i]] == Integer.MAX_VALUE) {
+                        distances[neighbours[i]] = depth;
+                        queue[tail++] = neighbours[i];
                     }
-                    edge.invertWeight();
                 }
             }
+            return distances;
         }
 
-        private LinkedList<Vertex> getVertices(String paper) {
-            return edgeList.get(paper);
+        /**
+         * @return the distance of every author from root, searching only if
+         * root is not among the most recently used roots
+         */
+        private int[] distancesFrom(int root) {
+            if (root == erdosId) {
+                return erdosNumbers;
+            }
+            int[] distances = distanceCache.get(root);
+            if (distances == null) {
+                distances = breadthFirst(root);
+                distanceCache.put(root, distances);
+            }
+            return distances;
         }
 
-        private void addEdge(String paper, String src, String dest) {
-            LinkedList<Edge> srcTmp;
-            LinkedList<Edge> destTmp;
-            LinkedList<Vertex> edgeTmp;
-            Vertex primary;
-            Vertex secondary;
-
-            // Handle existing authors
-            if (vertexList.containsKey(src)) {
-                primary = vertexList.get(src);
-            } else {
-                // Initialise vertex
-                primary = new Vertex(src);
-                vertexList.put(src, primary);
-            }
-            if (vertexList.containsKey(dest)) {
-                secondary = vertexList.get(dest);
-            } else {
-                secondary = new Vertex(dest);
-                vertexList.put(dest, secondary);
-            }
-            // Update adjacency list
-            Edge edge = new Edge(paper, primary, secondary);
-            srcTmp = updateAdjList(primary, edge);
-            destTmp = updateAdjList(secondary, edge);
-            // Update edge list if the edge is not a loop (single author)
-            if (!src.equals(dest)) {
-                edgeTmp = updateEdgeList(paper, primary);
-                if (edgeTmp != null) {
-                    edgeList.put(paper, edgeTmp);
-                }
-                edgeTmp = updateEdgeList(paper, secondary);
-                if (edgeTmp != null) {
-                    edgeList.put(paper, edgeTmp);
-                }
+        /**
+         * Finds the distance between two authors, from cached distances of
+         * either one if there are any, and otherwise with a bidirectional
+         * breadth first search.
+         *
+         * The search grows whichever side has the smaller frontier by a whole
+         * level at a time, and stops at the end of the first level that meets
+         * the other side. Both sides together usually visit a small fraction
+         * of the authors a full search from either end would.
+         */
+        private int distance(int authorA, int authorB) {
+            int[] cached = authorA == erdosId ? erdosNumbers : distanceCache.get(authorA);
+            if (cached != null) {
+                return cached[authorB];
+            }
+            cached = authorB == erdosId ? erdosNumbers : distanceCache.get(authorB);
+            if (cached != null) {
+                return cached[authorA];
             }
-            if (srcTmp != null) {
-                adjMap.put(primary, srcTmp);
+            if (authorA == authorB) {
+                return 0;
             }
-            if (destTmp != null) {
-                adjMap.put(secondary, destTmp);
+            if (stamps == null) {
+                stamps = new int[authorCount];
+                forward = new Frontier();
+                backward = new Frontier();
             }
+            // Stamps mark the authors reached by this search, as epoch from
+            // A's side and -epoch from B's side
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(stamps, 0);
+                epoch = 1;
+            }
+            forward.start(authorA, epoch);
+            backward.start(authorB, -epoch);
+            while (forward.size() > 0 && backward.size() > 0) {
+                int best = forward.size() <= backward.size()
+                        ? forward.expand(backward) : backward.expand(forward);
+                if (best != Integer.MAX_VALUE) {
+                    return best;
+                }
+            }
+            return Integer.MAX_VALUE;
         }
 
-        private LinkedList<Edge> updateAdjList(Vertex entry, Edge edge) {
-            LinkedList<Edge> tmp;
+        /**
+         * One side of a bidirectional search, holding the authors it has
+         * reached in the order they were reached, and their distances from
+         * its root. The authors of the current level are queue[head, tail).
+         */
+        private class Frontier {
+            private int[] queue = new int[authorCount];
+            private int[] distances = new int[authorCount];
+            private int head;
+            private int tail;
+            private int side;
+
+            private void start(int root, int side) {
+                this.side = side;
+                stamps[root] = side;
+                distances[root] = 0;
+                queue[0] = root;
+                head = 0;
+                tail = 1;
+            }
 
-            if (adjMap.containsKey(entry)) {
-                tmp = adjMap.get(entry);
-                if (tmp.contains(edge)) {
-                    return null;
-                } else {
-                    tmp.add(edge);
-                }
-            } else {
-                tmp = new LinkedList<>();
-                tmp.add(edge);
+            private int size() {
+                return tail - head;
             }
 
-            return tmp;
+            /**
+             * Expands every author of the current level, queueing the next.
+             *
+             * @return the shortest distance through a meeting with the other
+             * side found in this level, or Integer.MAX_VALUE if there was none
+             */
+            private int expand(Frontier other) {
+                int best = Integer.MAX_VALUE;
+                int end = tail;
+                for (int j = head; j < tail; j++) {
+                    int author = queue[j];
+                    int depth = distances[author] + 1;
+                    for (int i = offsets[author]; i < offsets[author + 1]; i++) {
+                        int next = neighbours[i];
+                        if (stamps[next] == other.side) {
+                            best = Math.min(best, depth + other.distances[next]);
+                        } else if (stamps[next] != side) {
+                            stamps[next] = side;
+                            distances[next] = depth;
+                            queue[end++] = next;
+                        }
+                    }
+                }
+                head = tail;
+                tail = end;
+                return best;
+            }
         }
 
-        private LinkedList<Vertex> updateEdgeList(String paper, Vertex vertex) {
-            LinkedList<Vertex> tmp;
+        private int intern(String author) {
+            int id = symbols.intern(author);
+            if (id < authorCount) {
+                return id;
+            }
+            if (authorCount == paperCounts.length) {
+                int capacity = authorCount * 2;
+                authorPapers = Arrays.copyOf(authorPapers, capacity);
+                paperCounts = Arrays.copyOf(paperCounts, capacity);
+                collaborators = Arrays.copyOf(collaborators, capacity);
+                collaboratorCounts = Arrays.copyOf(collaboratorCounts, capacity);
+            }
+            authorPapers[id] = new int[INITIAL_CAPACITY];
+            collaborators[id] = new int[INITIAL_CAPACITY];
+            return authorCount++;
+        }
 
-            if (edgeList.containsKey(paper)) {
-                tmp = edgeList.get(paper);
-                if (tmp.contains(vertex)) {
-                    return null;
-                } else {
-                    tmp.add(vertex);
+        /**
+         * Records a paper, its authors and the collaborations between them.
+         * An author listed twice on a paper is only counted once.
+         */
+        private void addPaper(String paper, String[] authors) {
+            int paperId = paperSymbols.intern(paper);
+            if (paperId < paperAuthors.size()) {
+                return;
+            }
+            int[] ids = new int[authors.length];
+            int count = 0;
+            for (String author : authors) {
+                int id = intern(author);
+                int papers = paperCounts[id];
+                if (papers > 0 && authorPapers[id][papers - 1] == paperId) {
+                    continue;
+                }
+                authorPapers[id] = append(authorPapers[id], papers, paperId);
+                paperCounts[id]++;
+                ids[count++] = id;
+            }
+            paperAuthors.add(Arrays.copyOf(ids, count));
+            for (int i = 0; i < count; i++) {
+                for (int j = i + 1; j < count; j++) {
+                    addCollaboration(ids[i], ids[j]);
                 }
-            } else {
-                tmp = new LinkedList<>();
-                tmp.add(vertex);
             }
+        }
 
-            return tmp;
+        /**
+         * Counts a joint paper of two authors, linking them the first time.
+         */
+        private void addCollaboration(int authorA, int authorB) {
+            long pair = LongIntMap.pairKey(authorA, authorB);
+            int count = collaborations.putIfAbsent(pair, 1);
+            if (count != LongIntMap.NO_VALUE) {
+                collaborations.put(pair, count + 1);
+                return;
+            }
+            collaborators[authorA] = append(collaborators[authorA],
+                    collaboratorCounts[authorA]++, authorB);
+            collaborators[authorB] = append(collaborators[authorB],
+                    collaboratorCounts[authorB]++, authorA);
         }
 
-        private Set<String> getIncidentEdges(String author) {
-            Set<String> result = new HashSet<>();
-            Vertex vertex = new Vertex(author);
-            LinkedList<Edge> edges = adjMap.get(vertex);
+        private int[] append(int[] array, int size, int value) {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, size * 2);
+            }
+            array[size] = value;
+            return array;
+        }
 
-            if (edges == null) {
+        /**
+         * @return the ids of the authors of paper, or null if it is unknown
+         */
+        private int[] getAuthors(String paper) {
+            int id = paperSymbols.getId(paper);
+            return id == -1 ? null : paperAuthors.get(id);
+        }
+
+        private Set<String> getPapers(String author) {
+            Set<String> result = new HashSet<>();
+            int id = symbols.getId(author);
+            if (id == -1) {
                 return result;
             }
-            for (Edge edge : edges) {
-                result.add(edge.label);
+            for (int i = 0; i < paperCounts[id]; i++) {
+                result.add(paperSymbols.getName(authorPapers[id][i]));
             }
             return result;
         }
 
         private Set<String> getCollaborators(String author) {
             Set<String> result = new HashSet<>();
-            Vertex primary = new Vertex(author);
-            LinkedList<Edge> edges = adjMap.get(primary);
-            int count = 0;
-
-            if (edges == null) {
+            int id = symbols.getId(author);
+            if (id == -1) {
                 return result;
             }
-            for (Edge edge : edges) {
-                if (edge.primary.author.equals(author)) {
-                    result.add(edge.secondary.author);
-                } else {
-                    result.add(edge.primary.author);
-                }
+            for (int i = 0; i < collaboratorCounts[id]; i++) {
+                result.add(symbols.getName(collaborators[id][i]));
             }
             return result;
         }
 
-        private void calculatePaths(Vertex src) {
-            // Perform BFS
-            SearchNode curr;
-            SearchNode next;
-            int newDepth;
-            double newWeightedDepth;
-            LinkedList<Vertex> visited = new LinkedList<>();
-            LinkedList<SearchNode> queue = new LinkedList<>();
-            SearchNode node = new SearchNode(src, 0, 0);
-            queue.add(node);
-            visited.add(src);
-
-            if (src.author.equals(ERDOS)) {
-                src.weightedErdosNo = 0;
-                src.erdosNo = 0;
-            }
-            while (queue.size() != 0) {
-                curr = queue.poll();
-                if (adjMap.get(curr.vertex) == null) {
-                    break;
-                }
-
-                for (Edge connectedVertex : adjMap.get(curr.vertex)) {
-                    newDepth = curr.depth + 1;
-                    newWeightedDepth = curr.weightedDepth + connectedVertex.weight;
-                    // Determine which node is the unvisited node
-                    if (curr.vertex.equals(connectedVertex.primary)) {
-                        // Determine if next node has been visited
-                        if (!visited.contains(connectedVertex.secondary)) {
-                            // Calculate fields and add to queue
-                            visited.add(connectedVertex.secondary);
-                            next = new SearchNode(connectedVertex.secondary,
-                                    newDepth, newWeightedDepth);
-                            connectedVertex.secondary.erdosNo = newDepth;
-                            connectedVertex.secondary.weightedErdosNo =
-                                        newWeightedDepth;
-                            queue.add(next);
-                        } else {
-                            // Handle a indirect path having a lighter path
-                            if (newWeightedDepth < connectedVertex.secondary.
-                                    weightedErdosNo) {
-                                connectedVertex.secondary.
-                                        weightedErdosNo = newWeightedDepth;
-                                next = new SearchNode(connectedVertex.secondary,
-                                        newDepth, newWeightedDepth);
-                                queue.add(next);
-                            }
-                        }
-                    } else {
-                        if (!visited.contains(connectedVertex.primary)) {
-                            visited.add(connectedVertex.primary);
-                            next = new SearchNode(connectedVertex.primary,
-                                    newDepth, newWeightedDepth);
-                            connectedVertex.primary.erdosNo = newDepth;
-                            connectedVertex.primary.weightedErdosNo =
-                                        newWeightedDepth;
-                            queue.add(next);
-                        } else {
-                            if (newWeightedDepth < connectedVertex.primary.
-                                    weightedErdosNo) {
-                                connectedVertex.primary.
-                                        weightedErdosNo = newWeightedDepth;
-                                next = new SearchNode(connectedVertex.primary,
-                                        newDepth, newWeightedDepth);
-                                queue.add(next);
-                            }
-                        }
-                    }
+        /**
+         * Flattens the collaborators of every author into arrays indexed by
+         * author id for the path searches. The collaborators of author a are
+         * neighbours[offsets[a]] up to neighbours[offsets[a + 1]], with the
+         * weight of each collaboration held alongside in weights. A pair of
+         * authors with n joint papers has a weight of 1/n.
+         */
+        private void buildAdjacency() {
+            offsets = new int[authorCount + 1];
+            for (int author = 0; author < authorCount; author++) {
+                offsets[author + 1] = offsets[author] + collaboratorCounts[author];
+            }
+            neighbours = new int[offsets[authorCount]];
+            weights = new double[offsets[authorCount]];
+            for (int author = 0; author < authorCount; author++) {
+                int start = offsets[author];
+                System.arraycopy(collaborators[author], 0, neighbours, start,
+                        collaboratorCounts[author]);
+                for (int i = start; i < offsets[author + 1]; i++) {
+                    weights[i] = 1.0 / collaborations.get(
+                            LongIntMap.pairKey(author, neighbours[i]));
                 }
             }
         }
 
-        private class SearchNode {
-            Vertex vertex;
-            int depth;
-            double weightedDepth;
-
-            private SearchNode(Vertex vertex, int depth, double weightedDepth) {
-                this.vertex = vertex;
-                this.depth = depth;
-                this.weightedDepth = weightedDepth;
+        /**
+         * Calculates the Erdos number and weighted Erdos number of every
+         * author reachable from src.
+         *
+         * @param src id of the author to measure from, or -1 if they wrote
+         * no papers
+         */
+        private void calculatePaths(int src) {
+            erdosId = src;
+            weightedErdosNumbers = new double[authorCount];
+            Arrays.fill(weightedErdosNumbers, Double.MAX_VALUE);
+            if (src == -1) {
+                erdosNumbers = new int[authorCount];
+                Arrays.fill(erdosNumbers, Integer.MAX_VALUE);
+                return;
+            }
+            erdosNumbers = breadthFirst(src);
+
+            // Dijkstra's algorithm, settling authors in order of weighted
+            // distance so each is expanded exactly once
+            IndexedHeap heap = new IndexedHeap(weightedErdosNumbers);
+            weightedErdosNumbers[src] = 0;
+            heap.update(src);
+            while (!heap.isEmpty()) {
+                int author = heap.poll();
+                double depth = weightedErdosNumbers[author];
+                for (int i = offsets[author]; i < offsets[author + 1]; i++) {
+                    int next = neighbours[i];
+                    if (depth + weights[i] < weightedErdosNumbers[next]) {
+                        weightedErdosNumbers[next] = depth + weights[i];
+                        heap.update(next);
+                    }
+                }
             }
         }
     }
 
-    private class Edge {
-        String label;
-        Vertex primary;
-        Vertex secondary;
-        double weight;
-
-        private Edge(String paper, Vertex src, Vertex dest) {
-            this.label = paper;
-            this.primary = src;
-            this.secondary = dest;
-        }
-
-        private String getPaper() {
-            return label;
-        }
-
-        private Set<String> getVertices() {
-            return Set.of(primary.author, secondary.author);
+    /**
+     * Binary min heap of author ids ordered by their entry in an array of
+     * distances. The heap position of every author is tracked, so lowering
+     * an author's distance moves them up in place rather than adding a
+     * second entry.
+     */
+    private static class IndexedHeap {
+        private final double[] keys;
+        private final int[] heap;
+        private final int[] positions;
+        private int size;
+
+        private IndexedHeap(double[] keys) {
+            this.keys = keys;
+            heap = new int[keys.length];
+            positions = new int[keys.length];
+            Arrays.fill(positions, -1);
         }
 
-        private void addWeight(int i) {
-            weight += i;
+        private boolean isEmpty() {
+            return size == 0;
         }
 
-        private void invertWeight() {
-            if (weight != 0) {
-                weight = 1/weight;
+        /**
+         * Adds author to the heap, or restores its place after its key was
+         * lowered.
+         */
+        private void update(int author) {
+            int position = positions[author];
+            if (position == -1) {
+                position = size++;
             }
+            double key = keys[author];
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (keys[heap[parent]] <= key) {
+                    break;
+                }
+                move(heap[parent], position);
+                position = parent;
+            }
+            move(author, position);
         }
 
-    }
-
-    private class Vertex {
-        String author;
-        int erdosNo;
-        double weightedErdosNo;
-
-        private Vertex(String author) {
-            this.author = author;
-            erdosNo = Integer.MAX_VALUE;
-            weightedErdosNo = Double.MAX_VALUE;
-        }
-
-        private void setErdosNo(int erdosNo) {
-            this.erdosNo = erdosNo;
-        }
-
-        @Override
-        public int hashCode() {
-            return author.hashCode();
+        private int poll() {
+            int top = heap[0];
+            positions[top] = -1;
+            int last = heap[--size];
+            if (size > 0) {
+                double key = keys[last];
+                int position = 0;
+                int child;
+                while ((child = 2 * position + 1) < size) {
+                    if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                        child++;
+                    }
+                    if (key <= keys[heap[child]]) {
+                        break;
+                    }
+                    move(heap[child], position);
+                    position = child;
+                }
+                move(last, position);
+            }
+            return top;
         }
 
-        @Override
-        public boolean equals(Object vertex) {
-            if (vertex instanceof Vertex) {
-                return author.equals(((Vertex) vertex).author);
-            }
-            return false;
+        private void move(int author, int position) {
+            heap[position] = author;
+            positions[author] = position;
         }
     }
-}
+}
\ No newline at end of file
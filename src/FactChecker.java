@@ -1,6 +1,68 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FactChecker {
+    private SymbolTable symbols;
+    private TopologicalOrder order;
+    private boolean consistent;
+
+    /**
+     * Creates a checker with no facts, for adding facts one at a time.
+     */
+    public FactChecker() {
+        symbols = new SymbolTable();
+        order = new TopologicalOrder();
+        consistent = true;
+    }
+
+    /**
+     * Adds a fact to those already checked, keeping an order of arrivals
+     * and departures that satisfies every fact so far. Only the part of the
+     * order between the two events of a new constraint is ever searched or
+     * reordered, so each fact costs far less than checking every fact again.
+     *
+     * Once the facts are inconsistent they stay inconsistent, and later
+     * facts are no longer checked.
+     *
+     * @param fact to add
+     * @return true if all the facts added so far are consistent
+     * @require fact != null
+     */
+    public boolean addFact(Fact fact) {
+        if (!consistent) {
+            return false;
+        }
+        int personA = intern(fact.getPersonA());
+        int personB = intern(fact.getPersonB());
+        if (fact.getType() == Fact.FactType.TYPE_ONE) {
+            consistent = order.addEdge(Diagraph.departure(personA),
+                    Diagraph.arrival(personB));
+        } else {
+            consistent = order.addEdge(Diagraph.arrival(personA),
+                    Diagraph.departure(personB))
+                    && order.addEdge(Diagraph.arrival(personB),
+                    Diagraph.departure(personA));
+        }
+        return consistent;
+    }
+
+    /**
+     * @return true if all the facts added so far are consistent
+     */
+    public boolean isConsistent() {
+        return consistent;
+    }
+
+    private int intern(String person) {
+        int id = symbols.intern(person);
+        if (id == order.size() / 2) {
+            order.addPerson();
+        }
+        return id;
+    }
 
     /**
      * Checks if a list of facts is internally consistent. 
@@ -16,151 +78,778 @@ public class FactChecker {
         return !graph.containsCycle();
     }
 
+    /**
+     * Finds a set of facts that cannot all hold at the same time, as a cycle
+     * of facts where each forces the next.
+     *
+     * @param facts list of facts to check consistency of
+     * @return the conflicting facts in cycle order, or an empty list if the
+     * facts are consistent
+     */
+    public static List<Fact> findConflict(List<Fact> facts) {
+        return findConflict(facts, false);
+    }
+
+    /**
+     * Finds a set of facts that cannot all hold at the same time, as a cycle
+     * of facts where each forces the next.
+     *
+     * Without shortening this is whichever cycle the consistency check runs
+     * into, at the cost of a single check. Shortening adds one more linear
+     * pass to find the fewest facts that form a cycle with the first fact
+     * found, which is usually a much smaller set.
+     *
+     * @param facts list of facts to check consistency of
+     * @param shorten whether to search for a smaller conflict
+     * @return the conflicting facts in cycle order, or an empty list if the
+     * facts are consistent
+     */
+    public static List<Fact> findConflict(List<Fact> facts, boolean shorten) {
+        Diagraph graph = constructGraph(facts);
+        if (!graph.containsCycle()) {
+            return new ArrayList<>();
+        }
+        List<Fact> indexed = facts instanceof RandomAccess ? facts
+                : new ArrayList<>(facts);
+        List<Fact> result = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        // Both edges of an overlap fact can lie on the same cycle
+        for (int fact : graph.findCycle(shorten)) {
+            if (seen.add(fact)) {
+                result.add(indexed.get(fact));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks many independent lists of facts for consistency, in parallel on
+     * the common ForkJoinPool.
+     *
+     * @param factSets lists of facts to check, each on its own
+     * @return whether each list of facts is consistent, in the same order
+     * @require factSets != null
+     */
+    public static boolean[] areFactSetsConsistent(List<List<Fact>> factSets) {
+        return areFactSetsConsistent(factSets, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Checks many independent lists of facts for consistency, in parallel on
+     * the given pool.
+     *
+     * Each worker takes a graph from a pool shared by the whole batch and
+     * clears it between lists, so after the first few lists the checks no
+     * longer allocate.
+     *
+     * @param factSets lists of facts to check, each on its own
+     * @param pool to run the checks on
+     * @return whether each list of facts is consistent, in the same order
+     * @require factSets != null && pool != null
+     */
+    public static boolean[] areFactSetsConsistent(List<List<Fact>> factSets,
+                                                  ForkJoinPool pool) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<Fact>[] lists = factSets.toArray(new List[0]);
+        boolean[] results = new boolean[lists.length];
+        pool.invoke(new CheckTask(lists, results, new ConcurrentLinkedQueue<>(),
+                0, lists.length));
+        return results;
+    }
+
+    /**
+     * Checks if a list of facts is internally consistent, splitting it into
+     * groups of people that share no facts and checking each group in
+     * parallel on the given pool.
+     *
+     * Groups are found with a union-find pass over the facts, and checking
+     * stops as soon as any group is found to be inconsistent. This pays off
+     * for very large lists that fall apart into many groups.
+     *
+     * @param facts list of facts to check consistency of
+     * @param pool to run the checks on
+     * @return true if all the facts are internally consistent, otherwise false.
+     * @require facts != null && pool != null
+     */
+    public static boolean areFactsConsistent(List<Fact> facts, ForkJoinPool pool) {
+        Components components = new Components(constructGraph(facts));
+        AtomicBoolean inconsistent = new AtomicBoolean();
+        pool.invoke(new ComponentTask(components, inconsistent,
+                new ConcurrentLinkedQueue<>(), 0, components.count));
+        return !inconsistent.get();
+    }
+
     private static Diagraph constructGraph(List<Fact> facts) {
         Diagraph graph = new Diagraph();
+        graph.addFacts(facts);
+        return graph;
+    }
 
-        for (Fact fact : facts) {
-            String personA = fact.getPersonA();
-            String personB = fact.getPersonB();
-            if (fact.getType().equals(Fact.FactType.TYPE_ONE)) {
-                graph.addEdge(personA, personB, 0);
-            } else {
-                graph.addEdge(personA, personB, 1);
+    /**
+     * Splits a range of fact lists in half until it is small enough to check
+     * sequentially.
+     */
+    @SuppressWarnings("serial")
+    private static class CheckTask extends RecursiveAction {
+        private static final int THRESHOLD = 4;
+
+        private final List<Fact>[] factSets;
+        private final boolean[] results;
+        private final Queue<Diagraph> graphs;
+        private final int from;
+        private final int to;
+
+        private CheckTask(List<Fact>[] factSets, boolean[] results,
+                          Queue<Diagraph> graphs, int from, int to) {
+            this.factSets = factSets;
+            this.results = results;
+            this.graphs = graphs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                Diagraph graph = graphs.poll();
+                if (graph == null) {
+                    graph = new Diagraph();
+                }
+                for (int i = from; i < to; i++) {
+                    graph.clear();
+                    graph.addFacts(factSets[i]);
+                    results[i] = !graph.containsCycle();
+                }
+                graphs.add(graph);
+                return;
             }
+            int mid = (from + to) >>> 1;
+            invokeAll(new CheckTask(factSets, results, graphs, from, mid),
+                    new CheckTask(factSets, results, graphs, mid, to));
         }
-        return graph;
     }
 
+    /**
+     * The edges of a precedence graph grouped by connected component, with
+     * the people of each component renumbered from 0.
+     */
+    private static class Components {
+        private int count;
+        private int[] peopleCounts;
+        private int[] edgeStarts;
+        private int[] sources;
+        private int[] targets;
+
+        private Components(Diagraph graph) {
+            int[] parents = new int[graph.people];
+            int[] sizes = new int[graph.people];
+            for (int person = 0; person < graph.people; person++) {
+                parents[person] = person;
+                sizes[person] = 1;
+            }
+            for (int i = 0; i < graph.edges; i++) {
+                union(parents, sizes, graph.sources[i] >> 1, graph.targets[i] >> 1);
+            }
+
+            // Number the components, and the people within each of them
+            int[] components = new int[graph.people];
+            int[] localIds = new int[graph.people];
+            int[] rootComponents = sizes;
+            Arrays.fill(rootComponents, -1);
+            peopleCounts = new int[graph.people];
+            for (int person = 0; person < graph.people; person++) {
+                int root = find(parents, person);
+                if (rootComponents[root] == -1) {
+                    rootComponents[root] = count++;
+                }
+                int component = rootComponents[root];
+                components[person] = component;
+                localIds[person] = peopleCounts[component]++;
+            }
+
+            edgeStarts = new int[count + 1];
+            for (int i = 0; i < graph.edges; i++) {
+                edgeStarts[components[graph.sources[i] >> 1] + 1]++;
+            }
+            for (int component = 0; component < count; component++) {
+                edgeStarts[component + 1] += edgeStarts[component];
+            }
+            int[] next = Arrays.copyOf(edgeStarts, count);
+            sources = new int[graph.edges];
+            targets = new int[graph.edges];
+            for (int i = 0; i < graph.edges; i++) {
+                int src = graph.sources[i];
+                int dest = graph.targets[i];
+                int position = next[components[src >> 1]]++;
+                // Keep whether each event is an arrival or departure
+                sources[position] = 2 * localIds[src >> 1] + (src & 1);
+                targets[position] = 2 * localIds[dest >> 1] + (dest & 1);
+            }
+        }
+
+        private static int find(int[] parents, int person) {
+            while (parents[person] != person) {
+                parents[person] = parents[parents[person]];
+                person = parents[person];
+            }
+            return person;
+        }
+
+        private static void union(int[] parents, int[] sizes, int personA,
+                                  int personB) {
+            int rootA = find(parents, personA);
+            int rootB = find(parents, personB);
+            if (rootA == rootB) {
+                return;
+            }
+            if (sizes[rootA] < sizes[rootB]) {
+                int swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            parents[rootB] = rootA;
+            sizes[rootA] += sizes[rootB];
+        }
+    }
+
+    /**
+     * Splits a range of components in half until it holds a single component
+     * or few enough edges to check sequentially.
+     */
+    @SuppressWarnings("serial")
+    private static class ComponentTask extends RecursiveAction {
+        private static final int THRESHOLD = 1 << 12;
+
+        private final Components components;
+        private final AtomicBoolean inconsistent;
+        private final Queue<Diagraph> graphs;
+        private final int from;
+        private final int to;
+
+        private ComponentTask(Components components, AtomicBoolean inconsistent,
+                              Queue<Diagraph> graphs, int from, int to) {
+            this.components = components;
+            this.inconsistent = inconsistent;
+            this.graphs = graphs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (inconsistent.get()) {
+                return;
+            }
+            int[] edgeStarts = components.edgeStarts;
+            if (to - from > 1 && edgeStarts[to] - edgeStarts[from] > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ComponentTask(components, inconsistent, graphs, from, mid),
+                        new ComponentTask(components, inconsistent, graphs, mid, to));
+                return;
+            }
+            Diagraph graph = graphs.poll();
+            if (graph == null) {
+                graph = new Diagraph();
+            }
+            for (int component = from; component < to && !inconsistent.get();
+                 component++) {
+                graph.clear();
+                graph.people = components.peopleCounts[component];
+                // Fact ids are only needed to report conflicts
+                for (int i = edgeStarts[component]; i < edgeStarts[component + 1]; i++) {
+                    graph.appendEdge(components.sources[i], components.targets[i], -1);
+                }
+                if (graph.containsCycle()) {
+                    inconsistent.set(true);
+                }
+            }
+            graphs.add(graph);
+        }
+    }
+
+    /**
+     * Precedence graph over the arrival and departure of every person.
+     *
+     * Person p with id i arrives at event 2i and departs at event 2i + 1,
+     * and an edge u -> v means event u happened strictly before event v:
+     * <pre>
+     * every person    A(p) -> D(p)
+     * TYPE_ONE(a, b)  D(a) -> A(b)
+     * TYPE_TWO(a, b)  A(a) -> D(b) and A(b) -> D(a)
+     * </pre>
+     * The facts are consistent exactly when some order of events satisfies
+     * every edge, that is when the graph has no cycle.
+     */
     private static class Diagraph {
-        private HashMap<String, LinkedList<Edge>> adjMap;
+        private static final int PERSON_EDGE = -1;
+
+        private SymbolTable symbols;
+        private int people;
+        private int[] sources;
+        private int[] targets;
+        private int[] factIds;
+        private int edges;
+        private LongIntMap edgeSet;
+        private int[] inDegrees;
+        private int[] offsets;
+        private int[] adjacent;
+        private int[] queue;
 
         private Diagraph() {
-            adjMap = new HashMap<>();
+            symbols = new SymbolTable();
+            sources = new int[16];
+            targets = new int[16];
+            factIds = new int[16];
+            edgeSet = new LongIntMap();
+            inDegrees = new int[0];
+            offsets = new int[0];
+            adjacent = new int[0];
+            queue = new int[0];
         }
 
-        private void addEdge(String src, String dest, int weight) {
-            LinkedList<Edge> tmp;
+        private static int arrival(int person) {
+            return 2 * person;
+        }
 
-            Edge edge = new Edge(src, dest, weight);
+        private static int departure(int person) {
+            return 2 * person + 1;
+        }
 
-            tmp = updateAdjMap(src, edge);
-            if (tmp != null)  {
-                adjMap.put(src, tmp);
+        private void addFacts(List<Fact> facts) {
+            int index = 0;
+            for (Fact fact : facts) {
+                addFact(fact, index++);
             }
-            if (weight != 0) {
-                tmp = updateAdjMap(dest, edge);
-                if (tmp != null) {
-                    adjMap.put(dest, tmp);
+        }
+
+        private void addFact(Fact fact, int factId) {
+            int personA = symbols.intern(fact.getPersonA());
+            int personB = symbols.intern(fact.getPersonB());
+            people = symbols.size();
+            if (fact.getType() == Fact.FactType.TYPE_ONE) {
+                addEdge(departure(personA), arrival(personB), factId);
+            } else {
+                addEdge(arrival(personA), departure(personB), factId);
+                addEdge(arrival(personB), departure(personA), factId);
+            }
+        }
+
+        /**
+         * Adds an edge unless it is already present, so facts repeated in
+         * the list cost nothing when checking for a cycle.
+         */
+        private void addEdge(int src, int dest, int factId) {
+            if (edgeSet.putIfAbsent(((long) src << 32) | dest, edges)
+                    == LongIntMap.NO_VALUE) {
+                appendEdge(src, dest, factId);
+            }
+        }
+
+        private void appendEdge(int src, int dest, int factId) {
+            if (edges == sources.length) {
+                sources = Arrays.copyOf(sources, edges * 2);
+                targets = Arrays.copyOf(targets, edges * 2);
+                factIds = Arrays.copyOf(factIds, edges * 2);
+            }
+            sources[edges] = src;
+            targets[edges] = dest;
+            factIds[edges] = factId;
+            edges++;
+        }
+
+        /**
+         * Runs Kahn's algorithm over a compressed adjacency array of the
+         * events, in O(V + E).
+         *
+         * @return true if some events could never be ordered
+         */
+        private boolean containsCycle() {
+            int events = 2 * people;
+            inDegrees = reuse(inDegrees, events);
+            offsets = reuse(offsets, events + 1);
+            adjacent = reuse(adjacent, edges);
+            queue = reuse(queue, events);
+            for (int i = 0; i < edges; i++) {
+                offsets[sources[i]]++;
+                inDegrees[targets[i]]++;
+            }
+            for (int event = 0; event < events; event++) {
+                offsets[event + 1] += offsets[event];
+                // Every departure also waits for its own arrival
+                inDegrees[event] += event & 1;
+            }
+            // Fill each event's slice from the back, leaving offsets at the
+            // start of every slice
+            for (int i = edges - 1; i >= 0; i--) {
+                adjacent[--offsets[sources[i]]] = targets[i];
+            }
+
+            // Arrivals come before departures, so only arrivals can start
+            int head = 0;
+            int tail = 0;
+            for (int event = 0; event < events; event += 2) {
+                if (inDegrees[event] == 0) {
+                    queue[tail++] = event;
+                }
+            }
+            while (head < tail) {
+                int event = queue[head++];
+                if ((event & 1) == 0 && --inDegrees[event + 1] == 0) {
+                    queue[tail++] = event + 1;
                 }
+                for (int i = offsets[event]; i < offsets[event + 1]; i++) {
+                    if (--inDegrees[adjacent[i]] == 0) {
+                        queue[tail++] = adjacent[i];
+                    }
+                }
+            }
+            return tail < events;
+        }
+
+        /**
+         * @return buffer if it holds at least length ints, with those ints
+         * cleared, otherwise a new buffer
+         */
+        private static int[] reuse(int[] buffer, int length) {
+            if (buffer.length < length) {
+                return new int[Math.max(length, buffer.length * 2)];
             }
+            Arrays.fill(buffer, 0, length, 0);
+            return buffer;
         }
 
-        private LinkedList<Edge> updateAdjMap(String vertex, Edge edge) {
-            LinkedList<Edge> tmp;
-            if (adjMap.containsKey(vertex)) {
-                tmp = adjMap.get(vertex);
-                if (tmp.contains(edge)) {
-                    return null;
-                } else {
-                    tmp.add(edge);
+        /**
+         * Forgets every fact, keeping the allocated buffers for the next
+         * list of facts.
+         */
+        private void clear() {
+            symbols.clear();
+            people = 0;
+            // Removing each edge keeps clearing in proportion to this graph,
+            // however large an earlier graph made the set
+            if (edgeSet.size() > 0) {
+                for (int i = 0; i < edges; i++) {
+                    edgeSet.remove(((long) sources[i] << 32) | targets[i]);
                 }
-            } else {
-                tmp = new LinkedList<>();
-                tmp.add(edge);
             }
-            Collections.sort(tmp, (Edge e1, Edge e2) -> e1.weight - e2.weight);
-            return tmp;
+            edges = 0;
         }
 
-        private boolean containsCycle() {
-            // Perform BFS
-            SearchNode curr;
-            SearchNode next;
-            String destination;
-            HashMap<String, SearchNode> visited = new HashMap<>();
-            LinkedList<Edge> explored = new LinkedList<>();
-            LinkedList<SearchNode> queue = new LinkedList<>();
+        /**
+         * Events left unordered by containsCycle all still wait on another
+         * unordered event, so walking back through those waits from any of
+         * them must close a cycle.
+         *
+         * @return the ids of the facts along a cycle, in order
+         * @require containsCycle() returned true
+         */
+        private int[] findCycle(boolean shorten) {
+            int events = 2 * people;
+            int[][] incoming = groupEdges(targets, events);
+            int[] steps = new int[events];
+            int[] walkEvents = new int[events];
+            int[] walkEdges = new int[events];
+            int length = 0;
+            int event = 0;
+            while (inDegrees[event] == 0) {
+                event++;
+            }
+            while (steps[event] == 0) {
+                steps[event] = length + 1;
+                walkEvents[length] = event;
+                int edge = PERSON_EDGE;
+                int previous = event - 1;
+                if ((event & 1) == 0 || inDegrees[previous] == 0) {
+                    for (int i = incoming[0][event]; ; i++) {
+                        edge = incoming[1][i];
+                        previous = sources[edge];
+                        if (inDegrees[previous] > 0) {
+                            break;
+                        }
+                    }
+                }
+                walkEdges[length++] = edge;
+                event = previous;
+            }
+            int start = steps[event] - 1;
+            if (shorten) {
+                return shortestCycle(walkEvents[start]);
+            }
+            // The walk went backwards, so reverse it into cycle order
+            int[] cycle = new int[length - start];
             int count = 0;
+            for (int i = length - 1; i >= start; i--) {
+                if (walkEdges[i] != PERSON_EDGE) {
+                    cycle[count++] = factIds[walkEdges[i]];
+                }
+            }
+            return Arrays.copyOf(cycle, count);
+        }
 
-            for (String vertex : adjMap.keySet()) {
-                if (visited.containsKey(vertex)) {
+        /**
+         * Finds the cycle through an unordered event with the fewest fact
+         * edges, using a 0-1 breadth first search in which the edge from
+         * each arrival to its departure is free.
+         *
+         * @return the ids of the facts along the cycle, in order
+         */
+        private int[] shortestCycle(int start) {
+            int events = 2 * people;
+            int[][] outgoing = groupEdges(sources, events);
+            int[] distances = new int[events];
+            Arrays.fill(distances, Integer.MAX_VALUE);
+            int[] parents = new int[events];
+            int[] parentEdges = new int[events];
+            // Each event is queued at most once per incoming edge
+            int capacity = Integer.highestOneBit(edges + events) << 1;
+            int[] deque = new int[capacity];
+            int head = 0;
+            int tail = 0;
+            distances[start] = 0;
+            deque[tail++] = start;
+            int closing = PERSON_EDGE;
+            int last = -1;
+            int best = Integer.MAX_VALUE;
+            while (head != tail) {
+                int event = deque[head];
+                head = (head + 1) & (capacity - 1);
+                int distance = distances[event];
+                if (distance >= best) {
                     continue;
                 }
-                SearchNode src = new SearchNode(vertex, 0, count);
-                queue.add(src);
-                visited.put(src.person, src);
-                while (queue.size() != 0) {
-                    curr = queue.pollFirst();
-                    if (adjMap.get(curr.person) == null) {
-                        continue;
+                if ((event & 1) == 0) {
+                    if (event + 1 == start) {
+                        best = distance;
+                        closing = PERSON_EDGE;
+                        last = event;
+                    } else if (inDegrees[event + 1] > 0
+                            && distance < distances[event + 1]) {
+                        distances[event + 1] = distance;
+                        parents[event + 1] = event;
+                        parentEdges[event + 1] = PERSON_EDGE;
+                        head = (head - 1) & (capacity - 1);
+                        deque[head] = event + 1;
                     }
-                    // Iterate through adjacent vertices
-                    for (Edge edge : adjMap.get(curr.person)) {
-                        if (explored.contains(edge)) {
-                            continue;
-                        }
-                        explored.add(edge);
-                        if (edge.src.equals(curr.person)) {
-                            destination = edge.dest;
-                        } else {
-                            destination = edge.src;
-                        }
-                        if (visited.containsKey(destination)) {
-                            // Handle previously visited vertices
-                            if (visited.get(destination).path == count) {
-                                return true;
-                            }
-                        } else {
-                            visited.put(destination, curr);
-                            next = new SearchNode(destination, edge.weight, count);
-                            if (edge.weight == 0) {
-                                queue.addFirst(next);
-                            } else {
-                                queue.addLast(next);
-                            }
+                }
+                for (int i = outgoing[0][event]; i < outgoing[0][event + 1]; i++) {
+                    int edge = outgoing[1][i];
+                    int next = targets[edge];
+                    if (next == start) {
+                        if (distance + 1 < best) {
+                            best = distance + 1;
+                            closing = edge;
+                            last = event;
                         }
+                    } else if (inDegrees[next] > 0
+                            && distance + 1 < distances[next]) {
+                        distances[next] = distance + 1;
+                        parents[next] = event;
+                        parentEdges[next] = edge;
+                        deque[tail] = next;
+                        tail = (tail + 1) & (capacity - 1);
                     }
+                }
             }
-                count++;
+            int[] cycle = new int[best];
+            int count = best;
+            if (closing != PERSON_EDGE) {
+                cycle[--count] = factIds[closing];
             }
-            return false;
+            for (int event = last; event != start; event = parents[event]) {
+                if (parentEdges[event] != PERSON_EDGE) {
+                    cycle[--count] = factIds[parentEdges[event]];
+                }
+            }
+            return cycle;
+        }
+
+        /**
+         * Groups the edges by one of their endpoints.
+         *
+         * @return the start of each event's edges, then the edges in order
+         */
+        private int[][] groupEdges(int[] endpoints, int events) {
+            int[] offsets = new int[events + 1];
+            for (int i = 0; i < edges; i++) {
+                offsets[endpoints[i] + 1]++;
+            }
+            for (int event = 0; event < events; event++) {
+                offsets[event + 1] += offsets[event];
+            }
+            int[] grouped = new int[edges];
+            int[] next = Arrays.copyOf(offsets, events);
+            for (int i = 0; i < edges; i++) {
+                grouped[next[endpoints[i]]++] = i;
+            }
+            return new int[][] {offsets, grouped};
         }
+    }
+
+    /**
+     * Dynamic topological order of a growing event graph, maintained with
+     * the Pearce-Kelly algorithm.
+     *
+     * Every event holds a distinct position. An edge u -> v that already
+     * agrees with the order is simply recorded. Otherwise only events
+     * positioned between v and u can be affected: a forward search from v
+     * and a backward search from u, both bounded to that range, either reach
+     * each other (a cycle) or find the two sets of events that must swap
+     * places. Those events are then redistributed over their own positions,
+     * with everything that must come before u ahead of everything after v.
+     */
+    private static class TopologicalOrder {
+        private int[][] successors = new int[16][];
+        private int[][] predecessors = new int[16][];
+        private int[] successorCounts = new int[16];
+        private int[] predecessorCounts = new int[16];
+        private int[] positions = new int[16];
+        private int size;
+        private LongIntMap edgeSet = new LongIntMap();
 
-        private static class Edge {
-            private String src;
-            private String dest;
-            private int weight;
+        private int[] stamps = new int[16];
+        private int epoch;
+        private int[] stack = new int[16];
+        private long[] forward = new long[16];
+        private long[] backward = new long[16];
 
-            private Edge(String personA, String personB, int weight) {
-                this.weight = weight;
-                src = personA;
-                dest = personB;
+        private int size() {
+            return size;
+        }
+
+        /**
+         * Adds the arrival and departure of a new person at the end of the
+         * order.
+         */
+        private void addPerson() {
+            if (size + 2 > positions.length) {
+                int capacity = positions.length * 2;
+                successors = Arrays.copyOf(successors, capacity);
+                predecessors = Arrays.copyOf(predecessors, capacity);
+                successorCounts = Arrays.copyOf(successorCounts, capacity);
+                predecessorCounts = Arrays.copyOf(predecessorCounts, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+                stamps = Arrays.copyOf(stamps, capacity);
+            }
+            for (int event = size; event < size + 2; event++) {
+                successors[event] = new int[2];
+                predecessors[event] = new int[2];
+                positions[event] = event;
             }
+            size += 2;
+            link(size - 2, size - 1);
+        }
 
-            @Override
-            public boolean equals(Object o) {
-                if (o instanceof Edge) {
-                    Edge edge = (Edge) o;
-                    return ((edge.dest.equals(src) &&
-                            edge.src.equals(dest) ) ||
-                           (edge.src.equals(src) &&
-                            edge.dest.equals(dest)) &&
-                            edge.weight == weight);
-                }
+        /**
+         * @return false, leaving the order unchanged, if the edge would
+         * close a cycle
+         */
+        private boolean addEdge(int src, int dest) {
+            if (src == dest) {
                 return false;
             }
+            if (edgeSet.get(((long) src << 32) | dest) != LongIntMap.NO_VALUE) {
+                return true;
+            }
+            int lower = positions[dest];
+            int upper = positions[src];
+            if (lower < upper) {
+                if (++epoch == 0) {
+                    Arrays.fill(stamps, 0);
+                    epoch = 1;
+                }
+                int forwardCount = search(dest, src, upper, true);
+                if (forwardCount == -1) {
+                    return false;
+                }
+                int backwardCount = search(src, -1, lower, false);
+                reorder(forwardCount, backwardCount);
+            }
+            link(src, dest);
+            return true;
+        }
+
+        /**
+         * Collects the events reachable from start, forwards or backwards,
+         * that lie strictly inside the bound.
+         *
+         * @return the number of events found, or -1 if target was reached
+         */
+        private int search(int start, int target, int bound, boolean isForward) {
+            long[] found = isForward ? forward : backward;
+            int count = 0;
+            int top = 0;
+            stamps[start] = epoch;
+            stack[top++] = start;
+            while (top > 0) {
+                int event = stack[--top];
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                // Pack by position so the events can be sorted into order
+                found[count++] = ((long) positions[event] << 32) | event;
+                int[] edges = isForward ? successors[event] : predecessors[event];
+                int degree = isForward ? successorCounts[event]
+                        : predecessorCounts[event];
+                for (int i = 0; i < degree; i++) {
+                    int next = edges[i];
+                    if (next == target) {
+                        return -1;
+                    }
+                    if (stamps[next] == epoch || (isForward
+                            ? positions[next] > bound : positions[next] < bound)) {
+                        continue;
+                    }
+                    stamps[next] = epoch;
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = next;
+                }
+            }
+            if (isForward) {
+                forward = found;
+            } else {
+                backward = found;
+            }
+            return count;
         }
 
-        private static class SearchNode {
-            private String person;
-            private int weight;
-            private int path;
+        /**
+         * Gives the events found backwards from the new edge's source the
+         * lowest of the affected positions, followed by those found forwards
+         * from its destination, each keeping their relative order.
+         */
+        private void reorder(int forwardCount, int backwardCount) {
+            Arrays.sort(forward, 0, forwardCount);
+            Arrays.sort(backward, 0, backwardCount);
+            int[] free = new int[forwardCount + backwardCount];
+            for (int i = 0; i < backwardCount; i++) {
+                free[i] = (int) (backward[i] >>> 32);
+            }
+            for (int i = 0; i < forwardCount; i++) {
+                free[backwardCount + i] = (int) (forward[i] >>> 32);
+            }
+            Arrays.sort(free);
+            for (int i = 0; i < backwardCount; i++) {
+                positions[(int) backward[i]] = free[i];
+            }
+            for (int i = 0; i < forwardCount; i++) {
+                positions[(int) forward[i]] = free[backwardCount + i];
+            }
+        }
 
-            private SearchNode(String person, int weight, int path) {
-                this.person = person;
-                this.weight = weight;
-                this.path = path;
+        private void link(int src, int dest) {
+            edgeSet.put(((long) src << 32) | dest, 0);
+            if (successorCounts[src] == successors[src].length) {
+                successors[src] = Arrays.copyOf(successors[src],
+                        successorCounts[src] * 2);
+            }
+            successors[src][successorCounts[src]++] = dest;
+            if (predecessorCounts[dest] == predecessors[dest].length) {
+                predecessors[dest] = Arrays.copyOf(predecessors[dest],
+                        predecessorCounts[dest] * 2);
             }
+            predecessors[dest][predecessorCounts[dest]++] = src;
         }
     }
-}
+}
\ No newline at end of file
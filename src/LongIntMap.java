@@ -0,0 +1,202 @@
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to non-negative int
+ * values, used where a pair of ints needs to be looked up without boxing.
+ */
+class LongIntMap {
+    /**
+     * Value returned by get when a key is not present
+     */
+    static final int NO_VALUE = -1;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Creates an empty map.
+     */
+    LongIntMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map able to hold expected entries without resizing.
+     *
+     * @param expected number of entries
+     */
+    LongIntMap(int expected) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity * 3 < expected * 4) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Packs an unordered pair of ints into a single key so that (a, b) and
+     * (b, a) map to the same entry.
+     *
+     * @require a >= 0 && b >= 0
+     */
+    static long pairKey(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    /**
+     * @param key to look up
+     * @return the value mapped to key, or NO_VALUE if absent
+     * @require key != Long.MIN_VALUE
+     */
+    int get(long key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Maps key to value, replacing any existing mapping.
+     *
+     * @param key to insert
+     * @param value to map it to
+     * @require key != Long.MIN_VALUE && value >= 0
+     */
+    void put(long key, int value) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 4 > keys.length * 3) {
+            resize();
+        }
+    }
+
+    /**
+     * Maps key to value unless key is already present, in a single probe.
+     *
+     * @param key to insert
+     * @param value to map it to
+     * @return the value already mapped to key, or NO_VALUE if it was added
+     * @require key != Long.MIN_VALUE && value >= 0
+     */
+    int putIfAbsent(long key, int value) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 4 > keys.length * 3) {
+            resize();
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Removes the mapping for key, if present.
+     *
+     * @param key to remove
+     * @return true if key was present
+     * @require key != Long.MIN_VALUE
+     */
+    boolean remove(long key) {
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                closeGap(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Shifts back any later entries of the probe run that can move into the
+     * emptied slot, so lookups never need tombstones.
+     */
+    private void closeGap(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (keys[slot] == EMPTY) {
+                break;
+            }
+            int home = slot(keys[slot]);
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    /**
+     * @return the number of keys in the map
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry while keeping the allocated capacity.
+     */
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        // Murmur3 finaliser to spread the packed pairs over the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dictionary encoding of names to dense int ids, shared by the graph classes
+ * so that their inner loops compare and index by int rather than by String.
+ *
+ * Names are stored once as UTF-8 in a single byte pool, and looked up through
+ * an open addressing table of ids keyed by a hash of those bytes. Names can
+ * be interned straight from a byte range, so parsers never need to create a
+ * String for a name that has been seen before. Each name is decoded to a
+ * String at most once, when it is first needed, and then cached by id.
+ */
+class SymbolTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] table;
+    private int[] slots;
+    private int[] starts;
+    private String[] names;
+    private byte[] pool;
+    private int poolSize;
+    private int size;
+
+    /**
+     * Creates an empty symbol table.
+     */
+    SymbolTable() {
+        table = new int[INITIAL_CAPACITY * 2];
+        slots = new int[INITIAL_CAPACITY];
+        starts = new int[INITIAL_CAPACITY + 1];
+        names = new String[INITIAL_CAPACITY];
+        pool = new byte[INITIAL_CAPACITY * 8];
+    }
+
+    /**
+     * Hashes a range of bytes. Also used by on-disk name indexes, so the
+     * result must not change between versions.
+     *
+     * @param bytes to hash
+     * @param offset of the first byte
+     * @param length number of bytes
+     * @return the hash of the byte range
+     */
+    static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= 0x01000193;
+        }
+        // FNV-1a alone barely mixes the low bits used to pick a slot
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the number of names interned
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param name to look up
+     * @return the id of name, or -1 if it has not been interned
+     */
+    int getId(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return getId(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes holding a UTF-8 encoded name
+     * @param offset of the name
+     * @param length of the name in bytes
+     * @return the id of the name, or -1 if it has not been interned
+     */
+    int getId(byte[] bytes, int offset, int length) {
+        int entry = table[find(bytes, offset, length, hash(bytes, offset, length))];
+        return entry - 1;
+    }
+
+    /**
+     * @param name to intern
+     * @return the id of name, assigning the next free id if it is new
+     */
+    int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int id = intern(bytes, 0, bytes.length);
+        if (names[id] == null) {
+            names[id] = name;
+        }
+        return id;
+    }
+
+    /**
+     * @param bytes holding a UTF-8 encoded name
+     * @param offset of the name
+     * @param length of the name in bytes
+     * @return the id of the name, assigning the next free id if it is new
+     */
+    int intern(byte[] bytes, int offset, int length) {
+        int slot = find(bytes, offset, length, hash(bytes, offset, length));
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+        if (size + 1 == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+            slots = Arrays.copyOf(slots, starts.length);
+            names = Arrays.copyOf(names, starts.length);
+        }
+        if (poolSize + length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+        }
+        System.arraycopy(bytes, offset, pool, poolSize, length);
+        poolSize += length;
+        starts[size + 1] = poolSize;
+        slots[size] = slot;
+        table[slot] = ++size;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    /**
+     * Forgets every name while keeping the allocated space, so the table can
+     * be reused. Costs O(size()) however large the table once grew.
+     */
+    void clear() {
+        for (int id = 0; id < size; id++) {
+            table[slots[id]] = 0;
+        }
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+        poolSize = 0;
+    }
+
+    /**
+     * @param id of an interned name
+     * @return the name
+     * @require 0 <= id < size()
+     */
+    String getName(int id) {
+        String name = names[id];
+        if (name == null) {
+            // Racing readers at worst decode the same immutable String twice
+            name = new String(pool, starts[id], starts[id + 1] - starts[id],
+                    StandardCharsets.UTF_8);
+            names[id] = name;
+        }
+        return name;
+    }
+
+    /**
+     * @return the slot holding the name, or the empty slot it belongs in
+     */
+    private int find(byte[] bytes, int offset, int length, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            int start = starts[entry - 1];
+            if (starts[entry] - start == length && Arrays.equals(pool, start,
+                    start + length, bytes, offset, offset + length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(pool, starts[id], starts[id + 1] - starts[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+            slots[id] = slot;
+        }
+    }
+}
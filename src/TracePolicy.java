@@ -0,0 +1,63 @@
+/**
+ * Represents the transmission rules applied while contact tracing.
+ *
+ * A person who has contact with someone contagious becomes contagious
+ * themselves once the incubation delay has passed, and then stays
+ * contagious for the infectious period.
+ */
+public final class TracePolicy {
+    /**
+     * Infectious period meaning a person never stops being contagious
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * The default rules: contagious 60 minutes after contact, forever after.
+     */
+    public static final TracePolicy DEFAULT = new TracePolicy(60);
+
+    private final int incubation;
+    private final int infectiousPeriod;
+
+    /**
+     * Creates a policy where people stay contagious indefinitely.
+     *
+     * @param incubation minutes between contact and becoming contagious
+     * @require incubation >= 0
+     */
+    public TracePolicy(int incubation) {
+        this(incubation, UNLIMITED);
+    }
+
+    /**
+     * Creates a new policy.
+     *
+     * A person who became contagious at time t can pass the disease on at
+     * any contact in the inclusive range [t, t + infectiousPeriod].
+     *
+     * @param incubation minutes between contact and becoming contagious
+     * @param infectiousPeriod minutes a person stays contagious, or UNLIMITED
+     * @require incubation >= 0 && infectiousPeriod >= 0
+     */
+    public TracePolicy(int incubation, int infectiousPeriod) {
+        if (incubation < 0 || infectiousPeriod < 0) {
+            throw new IllegalArgumentException("Policy durations must not be negative");
+        }
+        this.incubation = incubation;
+        this.infectiousPeriod = infectiousPeriod;
+    }
+
+    /**
+     * @return minutes between contact and becoming contagious
+     */
+    public int getIncubation() {
+        return incubation;
+    }
+
+    /**
+     * @return minutes a person stays contagious, or UNLIMITED
+     */
+    public int getInfectiousPeriod() {
+        return infectiousPeriod;
+    }
+}
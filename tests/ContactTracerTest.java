@@ -1,6 +1,18 @@
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.junit.Test;
 
@@ -83,4 +95,430 @@ public class ContactTracerTest {
         assertEquals(Set.of("Matt"), tracer.getContactsAfter("Anna", 101));
         assertEquals(Set.of(), tracer.getContactsAfter("Anna", 1741));
     }
+
+    @Test
+    public void testDuplicateTraces() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 200));
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Sanni", "Anna", 100));
+        tracer.addTrace(new Trace("Anna", "Sanni", 200));
+
+        assertEquals(List.of(100, 200), tracer.getContactTimes("Anna", "Sanni"));
+        assertEquals(List.of(100, 200), tracer.getContactTimes("Sanni", "Anna"));
+    }
+
+    @Test
+    public void testBulkLoadMatchesIncremental() {
+        List<Trace> traces = List.of(
+                new Trace("Anna", "Sanni", 100),
+                new Trace("Kristian", "Kenton", 4020),
+                new Trace("Anna", "Matt", 1740),
+                new Trace("Sanni", "Anna", 100),
+                new Trace("Kenton", "Kristian", 3360),
+                new Trace("Kristian", "Kenton", 3360),
+                new Trace("Matt", "Kristian", 3240)
+        );
+        ContactTracer bulk = new ContactTracer(traces);
+        ContactTracer incremental = new ContactTracer();
+        for (Trace trace : traces) {
+            incremental.addTrace(trace);
+        }
+
+        for (String person : List.of("Anna", "Sanni", "Matt", "Kristian", "Kenton")) {
+            assertEquals(incremental.getContacts(person), bulk.getContacts(person));
+            assertEquals(incremental.contactTrace(person, 0), bulk.contactTrace(person, 0));
+        }
+        assertEquals(List.of(100), bulk.getContactTimes("Anna", "Sanni"));
+        assertEquals(List.of(3360, 4020), bulk.getContactTimes("Kenton", "Kristian"));
+    }
+
+    @Test
+    public void testGetContactsBetween() {
+        List<Trace> traces = List.of(
+                new Trace("Anna", "Sanni", 100),
+                new Trace("Anna", "Matt", 1740),
+                new Trace("Anna", "Kristian", 3240),
+                new Trace("Kenton", "Anna", 3240),
+                new Trace("Anna", "Max", 4020)
+        );
+        ContactTracer tracer = new ContactTracer(traces);
+
+        assertEquals(Set.of("Matt", "Kristian", "Kenton"), tracer.getContactsBetween("Anna", 1740, 3240));
+        assertEquals(Set.of("Kristian", "Kenton"), tracer.getContactsBetween("Anna", 1741, 4019));
+        assertEquals(Set.of(), tracer.getContactsBetween("Anna", 101, 1739));
+        assertEquals(Set.of(), tracer.getContactsBetween("Anna", 4020, 100));
+        assertEquals(Set.of(), tracer.getContactsBetween("Nobody", 0, 5000));
+    }
+
+    @Test
+    public void testLongTransmissionChain() {
+        List<Trace> traces = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            traces.add(new Trace("p" + i, "p" + (i + 1), i * 60));
+        }
+        ContactTracer tracer = new ContactTracer(traces);
+
+        // Each person becomes contagious exactly in time for the next contact
+        assertEquals(200000, tracer.contactTrace("p0", 0).size());
+        assertEquals(100000, tracer.contactTrace("p100000", 100000 * 60).size());
+        assertEquals(Set.of(), tracer.contactTrace("p0", 1));
+    }
+
+    @Test
+    public void testEarlierInfectionReachesMore() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Matt", 1000));
+        tracer.addTrace(new Trace("Matt", "Max", 1030));
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Sanni", "Matt", 200));
+
+        // Matt is first infected via Sanni, so is contagious in time for Max
+        assertEquals(Set.of("Sanni", "Matt", "Max"), tracer.contactTrace("Anna", 0));
+        assertEquals(Set.of("Matt"), tracer.contactTrace("Anna", 500));
+        assertEquals(Set.of(), tracer.contactTrace("Nobody", 0));
+    }
+
+    @Test
+    public void testTracePolicy() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Matt", 100));
+        tracer.addTrace(new Trace("Matt", "Max", 130));
+        tracer.addTrace(new Trace("Max", "Kenton", 1000));
+
+        assertEquals(Set.of("Matt"), tracer.contactTrace("Anna", 100));
+        assertEquals(Set.of("Matt", "Max", "Kenton"),
+                tracer.contactTrace("Anna", 100, new TracePolicy(30)));
+        // Max stops being contagious at 160 + 500
+        assertEquals(Set.of("Matt", "Max"),
+                tracer.contactTrace("Anna", 100, new TracePolicy(30, 500)));
+        assertEquals(Set.of("Matt", "Max", "Kenton"),
+                tracer.contactTrace("Anna", 100, new TracePolicy(30, 840)));
+
+        // A later infection reopens the window closed by an earlier one
+        TracePolicy policy = new TracePolicy(60, 100);
+        tracer = new ContactTracer();
+        tracer.addTrace(new Trace("A", "B", 10));
+        tracer.addTrace(new Trace("A", "B", 90));
+        tracer.addTrace(new Trace("B", "C", 200));
+        assertEquals(Set.of("B", "C"), tracer.contactTrace("A", 0, policy));
+        assertEquals(Set.of("B", "C"), tracer.contactTrace("A", 50, policy));
+        assertEquals(70, tracer.explainTrace("A", 0, policy).getInfectionTime("B"));
+    }
+
+    @Test
+    public void testContactTraceAll() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Matt", "Kristian", 3240));
+        tracer.addTrace(new Trace("Kristian", "Sanni", 3270));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 3360));
+        tracer.addTrace(new Trace("Kristian", "Max", 3360));
+        tracer.addTrace(new Trace("Kenton", "Kristian", 4020));
+
+        ContactTracer.ClusterTrace cluster = tracer.contactTraceAll(
+                Map.of("Anna", 130, "Sanni", 0, "Max", 3400));
+
+        assertEquals(Set.of("Anna", "Sanni", "Max"), cluster.getSeeds());
+        assertEquals(tracer.contactTrace("Anna", 130), cluster.getExposed("Anna"));
+        assertEquals(tracer.contactTrace("Sanni", 0), cluster.getExposed("Sanni"));
+        assertEquals(Set.of(), cluster.getExposed("Max"));
+        assertEquals(Set.of("Anna", "Matt", "Kristian", "Kenton", "Max"),
+                cluster.getAllExposed());
+    }
+
+    @Test
+    public void testConcurrentIngest() throws InterruptedException {
+        ContactTracer tracer = new ContactTracer(true);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            String person = "writer" + w;
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    tracer.addTrace(new Trace(person, "hub", i));
+                    // A narrow window keeps each query cheap, so the test
+                    // exercises interleaving rather than building results
+                    tracer.getContactsBetween("hub", i - 10, i);
+                }
+            });
+            writers[w].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        tracer.flush();
+
+        assertEquals(Set.of("writer0", "writer1", "writer2", "writer3"), tracer.getContacts("hub"));
+        assertEquals(10000, tracer.getContactTimes("hub", "writer2").size());
+        assertEquals(Set.of("hub", "writer0", "writer1", "writer3"), tracer.contactTrace("writer2", 0));
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Matt", "Kristian", 3240));
+        tracer.addTrace(new Trace("Kristian", "Sanni", 3270));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 3360));
+        tracer.addTrace(new Trace("Kristian", "Max", 3360));
+        tracer.addTrace(new Trace("Kenton", "Kristian", 4020));
+        tracer.addTrace(new Trace("Zoë", "Kenton", -20));
+
+        Path file = Files.createTempFile("contacts", ".bin");
+        try {
+            tracer.writeTo(file);
+            ContactTracer mapped = ContactTracer.open(file);
+
+            assertEquals(Set.of("Matt", "Kristian", "Kenton", "Max"), mapped.contactTrace("Anna", 130));
+            assertEquals(Set.of("Matt", "Sanni", "Kenton", "Max"), mapped.getContacts("Kristian"));
+            assertEquals(Set.of("Sanni", "Kenton", "Max"), mapped.getContactsBetween("Kristian", 3270, 3360));
+            assertEquals(List.of(3360, 4020), mapped.getContactTimes("Kenton", "Kristian"));
+            assertEquals(List.of(-20), mapped.getContactTimes("Kenton", "Zoë"));
+            assertEquals(List.of(), mapped.getContactTimes("Anna", "Kristian"));
+            assertEquals(Set.of(), mapped.getContacts("Nobody"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMappedFileIsReadOnly() throws IOException {
+        Path file = Files.createTempFile("contacts", ".bin");
+        try {
+            new ContactTracer(List.of(new Trace("Anna", "Sanni", 100))).writeTo(file);
+            ContactTracer.open(file).addTrace(new Trace("Anna", "Matt", 200));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLoadCsv() throws IOException {
+        String csv = "person1,person2,time\r\n"
+                + "Anna,Sanni,100\r\n"
+                + "Anna,Matt,1740\n"
+                + "\n"
+                + "Matt,Kristian,3240\n"
+                + "Kristian,Sanni,3270\n"
+                + "Kristian,Kenton,3360\n"
+                + "Kristian,Zoë,-5\n"
+                + "Kenton,Kristian,4020";
+        ContactTracer tracer = new ContactTracer();
+        long records = tracer.loadCsv(Channels.newChannel(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))));
+
+        assertEquals(7, records);
+        assertEquals(Set.of("Matt", "Sanni", "Kenton", "Zoë"), tracer.getContacts("Kristian"));
+        assertEquals(List.of(3360, 4020), tracer.getContactTimes("Kenton", "Kristian"));
+        assertEquals(List.of(-5), tracer.getContactTimes("Zoë", "Kristian"));
+        assertEquals(Set.of("Matt", "Kristian", "Kenton"), tracer.contactTrace("Anna", 130));
+    }
+
+    @Test
+    public void testLoadBinary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeRecord(out, "Anna", "Sanni", 100);
+        writeRecord(out, "Anna", "Matt", 1740);
+        writeRecord(out, "Matt", "Kristian", 3240);
+        writeRecord(out, "Anna", "Sanni", 100);
+        ContactTracer tracer = new ContactTracer();
+        long records = tracer.loadBinary(Channels.newChannel(
+                new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(4, records);
+        assertEquals(Set.of("Sanni", "Matt"), tracer.getContacts("Anna"));
+        assertEquals(List.of(100), tracer.getContactTimes("Sanni", "Anna"));
+        assertEquals(Set.of("Matt", "Kristian"), tracer.contactTrace("Anna", 130));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadBinaryRejectsOversizedName() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeRecord(out, "Anna", "Sanni", 100);
+        out.writeBytes(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(0x7ffffffb).putInt(0).array());
+        new ContactTracer().loadBinary(Channels.newChannel(
+                new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, String person1,
+                                    String person2, int time) {
+        for (String person : List.of(person1, person2)) {
+            byte[] name = person.getBytes(StandardCharsets.UTF_8);
+            out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+                    .putInt(name.length).array());
+            out.writeBytes(name);
+        }
+        out.writeBytes(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(time).array());
+    }
+
+    @Test
+    public void testRetention() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Anna", "Sanni", 2000));
+        tracer.setRetention(1000);
+
+        // Only contacts at or after 2000 - 1000 are kept
+        assertEquals(Set.of("Matt", "Sanni"), tracer.getContacts("Anna"));
+        assertEquals(List.of(2000), tracer.getContactTimes("Anna", "Sanni"));
+
+        tracer.addTrace(new Trace("Matt", "Kristian", 2800));
+        tracer.addTrace(new Trace("Anna", "Kenton", 900));
+        tracer.compact();
+
+        assertEquals(Set.of("Sanni"), tracer.getContacts("Anna"));
+        assertEquals(List.of(), tracer.getContactTimes("Anna", "Matt"));
+        assertEquals(List.of(), tracer.getContactTimes("Anna", "Kenton"));
+        assertEquals(Set.of("Kristian"), tracer.contactTrace("Matt", 0));
+
+        tracer.addTrace(new Trace("Anna", "Matt", 2900));
+        assertEquals(List.of(2900), tracer.getContactTimes("Matt", "Anna"));
+        assertEquals(Set.of("Sanni", "Matt"), tracer.getContacts("Anna"));
+    }
+
+    @Test
+    public void testSubscription() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 3360));
+
+        Map<String, Integer> notified = new HashMap<>();
+        ContactTracer.Subscription subscription = tracer.subscribe("Anna", 130, notified::put);
+        assertEquals(Set.of("Matt"), subscription.getExposed());
+
+        // Kristian's earlier contact with Kenton only matters once Kristian is exposed
+        tracer.addTrace(new Trace("Matt", "Kristian", 1000));
+        assertEquals(Set.of("Matt"), subscription.getExposed());
+        tracer.addTrace(new Trace("Matt", "Kristian", 3240));
+        assertEquals(Set.of("Matt", "Kristian", "Kenton"), subscription.getExposed());
+        assertEquals(Map.of("Kristian", 3300, "Kenton", 3420), notified);
+
+        // An earlier route to Kristian reaches Max, who Kristian met before 3300
+        tracer.addTrace(new Trace("Kristian", "Max", 2000));
+        tracer.addTrace(new Trace("Anna", "Kristian", 1800));
+        assertEquals(tracer.contactTrace("Anna", 130), subscription.getExposed());
+        assertEquals(Integer.valueOf(2060), notified.get("Max"));
+
+        subscription.cancel();
+        tracer.addTrace(new Trace("Max", "Sanni", 5000));
+        assertEquals(3, notified.size());
+    }
+
+    @Test
+    public void testSubscriptionKeepsEvictedExposures() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.setRetention(1000);
+        ContactTracer.Subscription subscription = tracer.subscribe("A", 0, (person, time) -> { });
+
+        tracer.addTrace(new Trace("A", "B", 10));
+        tracer.addTrace(new Trace("X", "Y", 5000));
+        tracer.compact();
+        tracer.addTrace(new Trace("B", "C", 5100));
+        assertEquals(Set.of(), tracer.contactTrace("A", 0));
+        assertEquals(Set.of("B", "C"), subscription.getExposed());
+    }
+
+    @Test
+    public void testCancelFromListener() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Sanni", "Matt", 200));
+
+        ContactTracer.Subscription[] first = new ContactTracer.Subscription[1];
+        List<String> notified = new ArrayList<>();
+        first[0] = tracer.subscribe("Anna", 0, (person, time) -> {
+            notified.add(person);
+            first[0].cancel();
+        });
+        ContactTracer.Subscription second = tracer.subscribe("Sanni", 0, (person, time) -> { });
+
+        tracer.addTrace(new Trace("Matt", "Kristian", 300));
+        tracer.addTrace(new Trace("Kristian", "Max", 400));
+        assertEquals(List.of("Kristian"), notified);
+        assertEquals(tracer.contactTrace("Sanni", 0), second.getExposed());
+        assertEquals(Set.of("Anna", "Matt", "Kristian", "Max"), second.getExposed());
+    }
+
+    @Test
+    public void testSubscribeFromListener() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+
+        List<ContactTracer.Subscription> added = new ArrayList<>();
+        tracer.subscribe("Anna", 0, (person, time) -> {
+            if (added.isEmpty()) {
+                added.add(tracer.subscribe(person, 0, (p, t) -> { }));
+            }
+        });
+
+        tracer.addTrace(new Trace("Sanni", "Matt", 200));
+        tracer.addTrace(new Trace("Matt", "Kristian", 300));
+        assertEquals(1, added.size());
+        assertEquals(Set.of("Sanni", "Kristian"), added.get(0).getExposed());
+    }
+
+    @Test
+    public void testSubscribeBeforeFirstContact() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 200));
+
+        Map<String, Integer> notified = new HashMap<>();
+        ContactTracer.Subscription subscription = tracer.subscribe("Max", 50, notified::put);
+        assertEquals(Set.of(), subscription.getExposed());
+
+        tracer.addTrace(new Trace("Max", "Anna", 60));
+        assertEquals(Set.of("Anna", "Sanni"), subscription.getExposed());
+        assertEquals(Map.of("Anna", 120, "Sanni", 260), notified);
+    }
+
+    @Test
+    public void testExplainTrace() {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Anna", "Sanni", 100));
+        tracer.addTrace(new Trace("Anna", "Matt", 1740));
+        tracer.addTrace(new Trace("Matt", "Kristian", 3240));
+        tracer.addTrace(new Trace("Kristian", "Sanni", 3270));
+        tracer.addTrace(new Trace("Kristian", "Kenton", 3360));
+        tracer.addTrace(new Trace("Kristian", "Max", 3360));
+        tracer.addTrace(new Trace("Kenton", "Kristian", 4020));
+
+        ContactTracer.TransmissionTree tree = tracer.explainTrace("Anna", 130);
+        assertEquals(tracer.contactTrace("Anna", 130), tree.getExposed());
+        assertEquals("Anna", tree.getSource());
+        assertEquals(List.of("Anna", "Matt", "Kristian", "Kenton"), tree.getPath("Kenton"));
+        assertEquals("Kristian", tree.getPredecessor("Max"));
+        assertEquals(3360, tree.getContactTime("Max"));
+        assertEquals(3420, tree.getInfectionTime("Max"));
+        assertEquals(null, tree.getPredecessor("Anna"));
+        assertEquals(Integer.MIN_VALUE, tree.getContactTime("Anna"));
+        assertEquals(Integer.MIN_VALUE, tree.getContactTime("Sanni"));
+        assertEquals(List.of(), tree.getPath("Sanni"));
+
+        // Negative times are valid, including -1
+        tracer.addTrace(new Trace("Zoë", "Anna", -1));
+        tree = tracer.explainTrace("Zoë", -100);
+        assertEquals("Zoë", tree.getPredecessor("Anna"));
+        assertEquals(-1, tree.getContactTime("Anna"));
+    }
+
+    @Test
+    public void testNamesSharedAcrossLoaders() throws IOException {
+        ContactTracer tracer = new ContactTracer();
+        tracer.addTrace(new Trace("Zoë", "Anna", 100));
+        String csv = "Anna,Zoë,200\nZoë,Søren,300\n";
+        tracer.loadCsv(Channels.newChannel(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))));
+        tracer.addTrace(new Trace("Søren", "Anna", 400));
+
+        assertEquals(List.of(100, 200), tracer.getContactTimes("Anna", "Zoë"));
+        assertEquals(Set.of("Anna", "Søren"), tracer.getContacts("Zoë"));
+        assertEquals(Set.of("Zoë", "Søren"), tracer.getContacts("Anna"));
+        assertEquals(Set.of(), tracer.getContacts("Zoe"));
+    }
 }
\ No newline at end of file
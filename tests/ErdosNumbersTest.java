@@ -2,6 +2,7 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import org.junit.Test;
 
@@ -134,4 +135,110 @@ public class ErdosNumbersTest {
         assertTrue(nums.isErdosConnectedToAll());
     }
 
+    @Test
+    public void testLongChain() {
+        List<String> papers = new ArrayList<>();
+        papers.add("Paper 0:" + ErdosNumbers.ERDOS + "|Author 1");
+        for (int i = 1; i < 2000; i++) {
+            papers.add("Paper " + i + ":Author " + i + "|Author " + (i + 1));
+        }
+        papers.add("Shortcut:Author 1|Author 1000");
+        papers.add("Solo:Hermit");
+        ErdosNumbers nums = new ErdosNumbers(papers);
+
+        assertEquals(0, nums.calculateErdosNumber(ErdosNumbers.ERDOS));
+        assertEquals(500, nums.calculateErdosNumber("Author 500"));
+        assertEquals(2, nums.calculateErdosNumber("Author 1000"));
+        assertEquals(1002, nums.calculateErdosNumber("Author 2000"));
+        assertEquals(1002.0, nums.calculateWeightedErdosNumber("Author 2000"), 0.001);
+        assertEquals(Integer.MAX_VALUE, nums.calculateErdosNumber("Hermit"));
+        assertEquals(Integer.MAX_VALUE, nums.calculateErdosNumber("Nobody"));
+        assertEquals(Double.MAX_VALUE, nums.calculateWeightedErdosNumber("Nobody"), 0);
+        assertFalse(nums.isErdosConnectedToAll());
+    }
+
+    @Test
+    public void testWeightedPrefersLighterPath() {
+        List<String> papers = new ArrayList<>();
+        papers.add("Once:" + ErdosNumbers.ERDOS + "|A");
+        for (int i = 0; i < 4; i++) {
+            papers.add("EB" + i + ":" + ErdosNumbers.ERDOS + "|B");
+            papers.add("BC" + i + ":B|C");
+            papers.add("CA" + i + ":C|A");
+        }
+        papers.add("AD:A|D");
+        ErdosNumbers nums = new ErdosNumbers(papers);
+
+        assertEquals(1, nums.calculateErdosNumber("A"));
+        assertEquals(0.75, nums.calculateWeightedErdosNumber("A"), 0.001);
+        assertEquals(1.75, nums.calculateWeightedErdosNumber("D"), 0.001);
+        assertEquals(0.5, nums.calculateWeightedErdosNumber("C"), 0.001);
+    }
+
+    @Test
+    public void testManyJointPapers() {
+        List<String> papers = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            papers.add("Joint " + i + ":" + ErdosNumbers.ERDOS + "|Prolific|Student " + (i % 5));
+        }
+        papers.add("Once:Prolific|Newcomer");
+        ErdosNumbers nums = new ErdosNumbers(papers);
+
+        assertEquals(1.0 / 500, nums.calculateWeightedErdosNumber("Prolific"), 1e-9);
+        assertEquals(1.0 / 100, nums.calculateWeightedErdosNumber("Student 3"), 1e-9);
+        assertEquals(1.0 / 500 + 1, nums.calculateWeightedErdosNumber("Newcomer"), 1e-9);
+        assertEquals(2, nums.calculateErdosNumber("Newcomer"));
+    }
+
+    @Test
+    public void testSingleAuthorPapers() {
+        List<String> papers = new ArrayList<>(SIMPLE_TEST_SET);
+        papers.add("On the Erdös number of Erdös:" + ErdosNumbers.ERDOS);
+        papers.add("Solo work:Burris, A. C.");
+        papers.add("Twice listed:Burris, A. C.|Burris, A. C.|Gyori, E.");
+        ErdosNumbers nums = new ErdosNumbers(papers);
+
+        assertEquals(0.0, nums.averageErdosNumber("On the Erdös number of Erdös"), 0.001);
+        assertEquals(2.0, nums.averageErdosNumber("Solo work"), 0.001);
+        assertEquals(2.0, nums.averageErdosNumber("Twice listed"), 0.001);
+        assertEquals(Set.of("Vertex-distinguishing proper edge-colorings", "Solo work",
+                "Twice listed"), nums.getPapers("Burris, A. C."));
+        assertEquals(Set.of("Schelp, R. H.", "Gyori, E."), nums.getCollaborators("Burris, A. C."));
+        assertFalse(nums.getCollaborators(ErdosNumbers.ERDOS).contains(ErdosNumbers.ERDOS));
+        assertEquals(Set.of(), nums.getPapers("Nobody"));
+        assertEquals(1.0, nums.calculateWeightedErdosNumber("Schelp, R. H."), 0.001);
+    }
+
+    @Test
+    public void testDistances() {
+        ErdosNumbers nums = new ErdosNumbers(SIMPLE_TEST_SET);
+
+        assertEquals(2, nums.calculateNumber("Schelp, R. H.", "Tenenbaum, G."));
+        assertEquals(4, nums.calculateNumber("Riordan, O. M.", "Hildebrand, A."));
+        assertEquals(0, nums.calculateNumber("Gyori, E.", "Gyori, E."));
+        assertEquals(nums.calculateErdosNumber("Burris, A. C."),
+                nums.calculateNumber(ErdosNumbers.ERDOS, "Burris, A. C."));
+        assertEquals(Integer.MAX_VALUE, nums.calculateNumber("Nobody", "Gyori, E."));
+
+        assertEquals(4, nums.calculateDistance("Hildebrand, A.", "Burris, A. C."));
+        assertEquals(1, nums.calculateDistance("Balister, P. N.", "Riordan, O. M."));
+        assertEquals(0, nums.calculateDistance("Gyori, E.", "Gyori, E."));
+
+        // Every pair agrees with a full search from either end
+        List<String> papers = new ArrayList<>();
+        Random random = new Random(3506);
+        for (int i = 0; i < 300; i++) {
+            papers.add("Paper " + i + ":A" + random.nextInt(200) + "|A" + random.nextInt(200));
+        }
+        nums = new ErdosNumbers(papers);
+        // Only pair queries on this one, so nothing is cached
+        ErdosNumbers pairs = new ErdosNumbers(papers);
+        for (int a = 0; a < 200; a += 7) {
+            for (int b = 0; b < 200; b += 3) {
+                int expected = nums.calculateNumber("A" + a, "A" + b);
+                assertEquals(expected, nums.calculateNumber("A" + b, "A" + a));
+                assertEquals(expected, pairs.calculateDistance("A" + a, "A" + b));
+            }
+        }
+    }
 }
\ No newline at end of file
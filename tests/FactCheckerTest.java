@@ -1,6 +1,10 @@
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 
 public class FactCheckerTest {
@@ -148,4 +152,162 @@ public class FactCheckerTest {
 
         assertFalse(FactChecker.areFactsConsistent(facts));
     }
+
+    @Test
+    public void testLongChain() {
+        List<Fact> facts = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            facts.add(new Fact(Fact.FactType.TYPE_ONE, "p" + i, "p" + (i + 1)));
+            facts.add(new Fact(Fact.FactType.TYPE_TWO, "p" + i, "q" + i));
+        }
+        assertTrue(FactChecker.areFactsConsistent(facts));
+
+        // q0 overlaps p0, which left before the last person arrived
+        facts.add(new Fact(Fact.FactType.TYPE_ONE, "p100000", "q0"));
+        assertFalse(FactChecker.areFactsConsistent(facts));
+    }
+
+    @Test
+    public void testAddFact() {
+        FactChecker checker = new FactChecker();
+        assertTrue(checker.addFact(new Fact(Fact.FactType.TYPE_ONE, "Anna", "Kenton")));
+        assertTrue(checker.addFact(new Fact(Fact.FactType.TYPE_TWO, "Kenton", "Katya")));
+        assertTrue(checker.addFact(new Fact(Fact.FactType.TYPE_TWO, "Katya", "Sanni")));
+        assertTrue(checker.addFact(new Fact(Fact.FactType.TYPE_ONE, "Sanni", "Matt")));
+        assertTrue(checker.addFact(new Fact(Fact.FactType.TYPE_TWO, "Matt", "Max")));
+        assertFalse(checker.addFact(new Fact(Fact.FactType.TYPE_ONE, "Max", "Sanni")));
+        assertFalse(checker.isConsistent());
+
+        // Every prefix of a random stream agrees with a full check
+        Random random = new Random(3506);
+        for (int round = 0; round < 200; round++) {
+            checker = new FactChecker();
+            List<Fact> facts = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                Fact.FactType type = random.nextInt(3) == 0
+                        ? Fact.FactType.TYPE_TWO : Fact.FactType.TYPE_ONE;
+                facts.add(new Fact(type, "p" + random.nextInt(10), "p" + random.nextInt(10)));
+                assertEquals(FactChecker.areFactsConsistent(facts),
+                        checker.addFact(facts.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testFindConflict() {
+        Fact anna = new Fact(Fact.FactType.TYPE_ONE, "Anna", "Kenton");
+        Fact sanni = new Fact(Fact.FactType.TYPE_ONE, "Sanni", "Matt");
+        Fact matt = new Fact(Fact.FactType.TYPE_TWO, "Matt", "Max");
+        Fact max = new Fact(Fact.FactType.TYPE_ONE, "Max", "Sanni");
+        List<Fact> facts = new ArrayList<>(List.of(
+                anna,
+                new Fact(Fact.FactType.TYPE_TWO, "Kenton", "Katya"),
+                new Fact(Fact.FactType.TYPE_TWO, "Katya", "Sanni"),
+                sanni, matt, max
+        ));
+        assertEquals(Set.of(sanni, matt, max), Set.copyOf(FactChecker.findConflict(facts)));
+        assertEquals(List.of(), FactChecker.findConflict(facts.subList(0, 5)));
+
+        // A long cycle through p0, which also has a direct contradiction
+        facts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            facts.add(new Fact(Fact.FactType.TYPE_ONE, "p" + i, "p" + (i + 1)));
+        }
+        facts.add(new Fact(Fact.FactType.TYPE_ONE, "p50", "p0"));
+        facts.add(new Fact(Fact.FactType.TYPE_ONE, "p1", "p0"));
+        assertEquals(51, FactChecker.findConflict(facts).size());
+        List<Fact> conflict = FactChecker.findConflict(facts, true);
+        assertEquals(2, conflict.size());
+        assertFalse(FactChecker.areFactsConsistent(conflict));
+        assertFalse(FactChecker.areFactsConsistent(FactChecker.findConflict(facts)));
+
+        Random random = new Random(3506);
+        for (int round = 0; round < 200; round++) {
+            facts = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Fact.FactType type = random.nextBoolean()
+                        ? Fact.FactType.TYPE_TWO : Fact.FactType.TYPE_ONE;
+                facts.add(new Fact(type, "p" + random.nextInt(10), "p" + random.nextInt(10)));
+            }
+            boolean consistent = FactChecker.areFactsConsistent(facts);
+            for (boolean shorten : new boolean[] {false, true}) {
+                conflict = FactChecker.findConflict(facts, shorten);
+                assertEquals(consistent, conflict.isEmpty());
+                assertTrue(consistent || !FactChecker.areFactsConsistent(conflict));
+            }
+        }
+    }
+
+    @Test
+    public void testAreFactSetsConsistent() {
+        List<List<Fact>> factSets = new ArrayList<>();
+        Random random = new Random(3506);
+        for (int i = 0; i < 500; i++) {
+            List<Fact> facts = new ArrayList<>();
+            int size = random.nextInt(i % 50 == 0 ? 2000 : 20);
+            for (int j = 0; j < size; j++) {
+                Fact.FactType type = random.nextInt(4) == 0
+                        ? Fact.FactType.TYPE_TWO : Fact.FactType.TYPE_ONE;
+                facts.add(new Fact(type, "p" + random.nextInt(2 * size + 1),
+                        "p" + random.nextInt(2 * size + 1)));
+            }
+            factSets.add(facts);
+        }
+        boolean[] results = FactChecker.areFactSetsConsistent(factSets);
+        assertEquals(factSets.size(), results.length);
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(FactChecker.areFactsConsistent(factSets.get(i)), results[i]);
+        }
+    }
+
+    @Test
+    public void testParallelComponents() {
+        Random random = new Random(3506);
+        List<Fact> facts = new ArrayList<>();
+        // Many small groups of people, each consistent on its own
+        for (int group = 0; group < 2000; group++) {
+            for (int i = 0; i < 5; i++) {
+                facts.add(new Fact(Fact.FactType.TYPE_ONE, group + "." + i,
+                        group + "." + (i + 1)));
+            }
+            facts.add(new Fact(Fact.FactType.TYPE_TWO, group + ".0", group + ".guest"));
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        assertTrue(FactChecker.areFactsConsistent(facts, pool));
+
+        facts.add(new Fact(Fact.FactType.TYPE_TWO, "1234.0", "1234.5"));
+        assertFalse(FactChecker.areFactsConsistent(facts, pool));
+
+        for (int round = 0; round < 100; round++) {
+            facts = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                Fact.FactType type = random.nextInt(4) == 0
+                        ? Fact.FactType.TYPE_TWO : Fact.FactType.TYPE_ONE;
+                facts.add(new Fact(type, "p" + random.nextInt(60), "p" + random.nextInt(60)));
+            }
+            assertEquals(FactChecker.areFactsConsistent(facts),
+                    FactChecker.areFactsConsistent(facts, pool));
+        }
+    }
+
+    @Test
+    public void testRepeatedFacts() {
+        Fact before = new Fact(Fact.FactType.TYPE_ONE, "a", "b");
+        Fact during = new Fact(Fact.FactType.TYPE_TWO, "a", "b");
+        List<Fact> facts = new ArrayList<>();
+        FactChecker checker = new FactChecker();
+        for (int i = 0; i < 10000; i++) {
+            Fact fact = new Fact(Fact.FactType.TYPE_ONE, "a", "b");
+            facts.add(fact);
+            assertTrue(checker.addFact(fact));
+        }
+        assertTrue(FactChecker.areFactsConsistent(facts));
+
+        facts.add(0, before);
+        facts.add(during);
+        assertFalse(FactChecker.areFactsConsistent(facts));
+        assertFalse(checker.addFact(during));
+        // Repeats of a fact are reported as the first occurrence
+        assertEquals(Set.of(before, during), Set.copyOf(FactChecker.findConflict(facts)));
+    }
 }
\ No newline at end of file